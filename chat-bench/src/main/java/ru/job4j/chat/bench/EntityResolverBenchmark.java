@@ -0,0 +1,138 @@
+package ru.job4j.chat.bench;
+
+import com.auth0.jwt.JWT;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoleRepository;
+import ru.job4j.chat.repository.RoomRepository;
+import ru.job4j.chat.service.EntityResolver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static ru.job4j.chat.JWTAuthenticationFilter.*;
+
+/**
+ * Resolution of room and author of a new message: two HTTP loopback calls with JWT verification
+ * on every hop (the former MessageService.addMessage code) against EntityResolver.
+ * The loopback server answers from memory, so both sides exclude the database and the difference
+ * is the cost the loopback added to every post. End-to-end posting throughput of a running instance
+ * is measured by PostingLoadTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityResolverBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer server;
+
+    private HttpClient client;
+
+    private HttpRequest roomRequest;
+
+    private HttpRequest personRequest;
+
+    private EntityResolver resolver;
+
+    @Setup
+    public void setUp() throws IOException {
+        Role role = Role.of("user");
+        role.setId(1);
+        Room room = Room.of("room 1");
+        room.setId(1);
+        Person person = Person.of("user1", "$2a$10$goKzdvoPy9dV/V9G.cOtH.l2FseWkt7.wh2j1KpbBNaW5IGJC1Zo.", role);
+        person.setId(1);
+        byte[] roomJson = mapper.writeValueAsBytes(room);
+        byte[] personJson = mapper.writeValueAsBytes(person);
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/room/", exchange -> respond(exchange, roomJson));
+        server.createContext("/person/", exchange -> respond(exchange, personJson));
+        server.start();
+        String token = JWT.create()
+                .withSubject("user1")
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(HMAC512(SECRET.getBytes()));
+        String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        client = HttpClient.newHttpClient();
+        roomRequest = HttpRequest.newBuilder(URI.create(url + "/room/1"))
+                .header(HEADER_STRING, TOKEN_PREFIX + token).GET().build();
+        personRequest = HttpRequest.newBuilder(URI.create(url + "/person/user1"))
+                .header(HEADER_STRING, TOKEN_PREFIX + token).GET().build();
+        resolver = new EntityResolver(
+                stub(RoomRepository.class, "findById", Optional.of(room)),
+                stub(PersonRepository.class, "findByUsername", Optional.of(person)),
+                stub(RoleRepository.class, "findById", Optional.of(role)),
+                1000, 30
+        );
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object loopback() throws Exception {
+        Room room = mapper.readValue(client.send(roomRequest, HttpResponse.BodyHandlers.ofByteArray()).body(), Room.class);
+        Person person = mapper.readValue(client.send(personRequest, HttpResponse.BodyHandlers.ofByteArray()).body(), Person.class);
+        return room.getId() + person.getId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object inProcess() {
+        return resolver.resolveRoom(1).getId() + resolver.resolvePerson("user1").getId();
+    }
+
+    /**
+     * Method of the loopback server: verifies the token like the authorization filter did on every hop
+     */
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        try (exchange) {
+            String token = exchange.getRequestHeaders().getFirst(HEADER_STRING).replace(TOKEN_PREFIX, "");
+            JWT.require(HMAC512(SECRET.getBytes())).build().verify(token);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Method for building repository that answers one lookup method from memory
+     */
+    private static <T> T stub(Class<T> type, String method, Object result) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, called, args) -> {
+            if (called.getName().equals(method)) {
+                return result;
+            }
+            throw new UnsupportedOperationException(called.getName());
+        }));
+    }
+}
@@ -0,0 +1,53 @@
+package ru.job4j.chat.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.job4j.chat.handlers.GlobalExceptionHandler;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of error responses by GlobalExceptionHandler, for errors with and without anchor.
+ * Logging is switched off (logback.xml), so only building of the response is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorRenderingBenchmark {
+
+    private GlobalExceptionHandler handler;
+
+    private IllegalArgumentException validationError;
+
+    private IllegalStateException unexpectedError;
+
+    @Setup
+    public void setUp() {
+        handler = new GlobalExceptionHandler(new ObjectMapper());
+        validationError = new IllegalArgumentException(
+                "Message not found. Actual parameters: message ID - 1. Please contact technical support with the 'anchor'. anchor: "
+                        + UUID.randomUUID()
+        );
+        unexpectedError = new IllegalStateException("Connection is closed");
+    }
+
+    @Benchmark
+    public MockHttpServletResponse validationError() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        handler.handleValidationException(validationError, response);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse unexpectedError() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        handler.handleException(unexpectedError, response);
+        return response;
+    }
+}
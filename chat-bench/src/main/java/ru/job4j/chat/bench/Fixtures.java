@@ -0,0 +1,51 @@
+package ru.job4j.chat.bench;
+
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory objects for benchmarks, built without a database
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Method for building page of messages of a few rooms and persons
+     * @param size - number of messages
+     * @return List of messages
+     */
+    public static List<Message> messages(int size) {
+        Role role = Role.of("user");
+        role.setId(2);
+        List<Room> rooms = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Room room = Room.of("room " + i);
+            room.setId(i);
+            rooms.add(room);
+        }
+        List<Person> persons = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            Person person = Person.of("user" + i, "$2a$10$goKzdvoPy9dV/V9G.cOtH.l2FseWkt7.wh2j1KpbBNaW5IGJC1Zo.", role);
+            person.setId(i);
+            persons.add(person);
+        }
+        List<Message> messages = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            Message message = Message.of(
+                    "Message number " + i + " with some ordinary chat text in it",
+                    rooms.get(i % rooms.size()),
+                    persons.get(i % persons.size())
+            );
+            message.setId(i);
+            messages.add(message);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,272 @@
+package ru.job4j.chat.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of the running application: finds the maximum number of concurrent in-flight requests
+ * served within the latency limit. Concurrency is doubled every step until more than 1% of requests fail
+ * or the 99th percentile of latency exceeds the limit. Latency of every request of a step is recorded
+ * in a histogram with buckets of 1 ms. In-flight requests are read from the server
+ * (gauge http.server.requests.active of the metrics endpoint) every POLL_MILLIS during the step,
+ * not counted on the client, so requests queued in the client or in the network are not included.
+ * Run it once against the default mode
+ * and once with chat.virtual-threads.enabled=true:
+ * java -cp chat-bench/target/benchmarks.jar ru.job4j.chat.bench.InFlightLoadTest URL TOKEN [LIMIT_MS] [STEP_SECONDS] [MAX_CONCURRENCY]
+ * With LOGIN_CONCURRENCY above 0 the same number of clients post /login during every step (login storm),
+ * so read latency is measured while BCrypt runs; compare it with a run without the storm:
+ * ... InFlightLoadTest URL TOKEN LIMIT_MS STEP_SECONDS MAX_CONCURRENCY LOGIN_CONCURRENCY [USERNAME] [PASSWORD]
+ */
+public class InFlightLoadTest {
+
+    private static final int START_CONCURRENCY = 50;
+
+    private static final double MAX_ERROR_RATE = 0.01;
+
+    /**
+     * Latencies from this value are recorded in the last bucket of the histogram
+     */
+    private static final int MAX_LATENCY_MS = 60_000;
+
+    private static final long POLL_MILLIS = 50;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final HttpRequest request;
+
+    /**
+     * Request of the gauge of in-flight requests of the server
+     */
+    private final HttpRequest active;
+
+    private final long stepSeconds;
+
+    /**
+     * Login of the storm, null without the storm
+     */
+    private final HttpRequest login;
+
+    private final int loginConcurrency;
+
+    public InFlightLoadTest(String url, String token, long stepSeconds,
+                            int loginConcurrency, String username, String password) {
+        this.request = HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        this.active = HttpRequest.newBuilder(URI.create(url).resolve("/actuator/metrics/http.server.requests.active"))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(10))
+                .GET()
+                .build();
+        this.stepSeconds = stepSeconds;
+        this.loginConcurrency = loginConcurrency;
+        this.login = loginConcurrency > 0
+                ? HttpRequest.newBuilder(URI.create(url).resolve("/login"))
+                        .header("Content-Type", "application/json")
+                        .timeout(Duration.ofSeconds(30))
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}"
+                        ))
+                        .build()
+                : null;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Arguments: URL TOKEN [LIMIT_MS] [STEP_SECONDS] [MAX_CONCURRENCY]");
+            return;
+        }
+        long limitMs = args.length > 2 ? Long.parseLong(args[2]) : 500;
+        long stepSeconds = args.length > 3 ? Long.parseLong(args[3]) : 20;
+        int maxConcurrency = args.length > 4 ? Integer.parseInt(args[4]) : 10_000;
+        int loginConcurrency = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+        String username = args.length > 6 ? args[6] : "user";
+        String password = args.length > 7 ? args[7] : "1111";
+        InFlightLoadTest test = new InFlightLoadTest(args[0], args[1], stepSeconds, loginConcurrency, username, password);
+        int passed = 0;
+        for (int concurrency = START_CONCURRENCY; concurrency <= maxConcurrency; concurrency *= 2) {
+            Step step = test.run(concurrency);
+            System.out.println(step);
+            if (!step.passed(limitMs)) {
+                break;
+            }
+            passed = step.maxInFlight;
+        }
+        System.out.println("Maximum concurrent in-flight requests within " + limitMs + " ms p99: " + passed);
+    }
+
+    /**
+     * Method for running one step of the test
+     * @param concurrency - number of clients, each sends the next request when the previous one completes
+     * @return result of the step
+     * @throws InterruptedException if the test was interrupted
+     */
+    public Step run(int concurrency) throws InterruptedException {
+        AtomicInteger maxInFlight = new AtomicInteger();
+        LongAdder requests = new LongAdder();
+        LongAdder errors = new LongAdder();
+        AtomicLongArray latencies = new AtomicLongArray(MAX_LATENCY_MS + 1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(stepSeconds);
+        ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+        LongAdder logins = new LongAdder();
+        LongAdder rejectedLogins = new LongAdder();
+        clients.execute(() -> {
+            while (System.nanoTime() < deadline) {
+                maxInFlight.accumulateAndGet(activeRequests(), Math::max);
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        });
+        for (int i = 0; i < loginConcurrency; i++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    try {
+                        int status = client.send(login, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (status == 200) {
+                            logins.increment();
+                        } else {
+                            rejectedLogins.increment();
+                        }
+                    } catch (Exception e) {
+                        rejectedLogins.increment();
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < concurrency; i++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            errors.increment();
+                        }
+                    } catch (Exception e) {
+                        errors.increment();
+                    }
+                    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    latencies.incrementAndGet((int) Math.min(millis, MAX_LATENCY_MS));
+                    requests.increment();
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(stepSeconds + 60, TimeUnit.SECONDS);
+        return Step.of(concurrency, maxInFlight.get(), requests.sum(), errors.sum(), latencies,
+                logins.sum(), rejectedLogins.sum());
+    }
+
+    /**
+     * Method for reading in-flight requests of the server, without the request of the gauge itself
+     * @return number of requests, 0 if the gauge can not be read
+     */
+    private int activeRequests() {
+        try {
+            HttpResponse<String> response = client.send(active, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return 0;
+            }
+            JsonNode measurements = mapper.readTree(response.body()).path("measurements");
+            return Math.max(0, measurements.path(0).path("value").asInt() - 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Result of one step of the test
+     */
+    public static final class Step {
+
+        private final int concurrency;
+
+        private final int maxInFlight;
+
+        private final long requests;
+
+        private final long errors;
+
+        private final long p50Ms;
+
+        private final long p99Ms;
+
+        private final long logins;
+
+        private final long rejectedLogins;
+
+        private Step(int concurrency, int maxInFlight, long requests, long errors, long p50Ms, long p99Ms,
+                     long logins, long rejectedLogins) {
+            this.concurrency = concurrency;
+            this.maxInFlight = maxInFlight;
+            this.requests = requests;
+            this.errors = errors;
+            this.p50Ms = p50Ms;
+            this.p99Ms = p99Ms;
+            this.logins = logins;
+            this.rejectedLogins = rejectedLogins;
+        }
+
+        /**
+         * Method for building result from the histogram of latencies, one bucket per millisecond
+         */
+        private static Step of(int concurrency, int maxInFlight, long requests, long errors,
+                               AtomicLongArray latencies, long logins, long rejectedLogins) {
+            return new Step(concurrency, maxInFlight, requests, errors,
+                    percentileMs(latencies, requests, 0.5), percentileMs(latencies, requests, 0.99),
+                    logins, rejectedLogins);
+        }
+
+        private static long percentileMs(AtomicLongArray latencies, long total, double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.min(total - 1, (long) (total * percentile));
+            long count = 0;
+            for (int millis = 0; millis < latencies.length(); millis++) {
+                count += latencies.get(millis);
+                if (count > rank) {
+                    return millis;
+                }
+            }
+            return latencies.length() - 1;
+        }
+
+        private boolean passed(long limitMs) {
+            return requests > 0 && errors <= requests * MAX_ERROR_RATE && p99Ms <= limitMs;
+        }
+
+        @Override
+        public String toString() {
+            return "concurrency " + concurrency + ": in-flight max " + maxInFlight + ", requests " + requests
+                    + ", errors " + errors + ", p50 " + p50Ms + " ms, p99 " + p99Ms + " ms"
+                    + (logins + rejectedLogins > 0 ? ", logins " + logins + ", rejected logins " + rejectedLogins : "");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.job4j.chat.bench;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import ru.job4j.chat.JWTAuthorizationFilter;
+import ru.job4j.chat.JWTTokenVerifier;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static ru.job4j.chat.JWTAuthenticationFilter.*;
+
+/**
+ * Verification of JWT: a verifier built per request (the former filter code),
+ * a shared verifier, JWTTokenVerifier with its cache, and the whole JWTAuthorizationFilter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private String token;
+
+    private JWTVerifier sharedVerifier;
+
+    private JWTTokenVerifier tokenVerifier;
+
+    private JWTAuthorizationFilter filter;
+
+    @Setup
+    public void setUp() {
+        token = JWT.create()
+                .withSubject("user")
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(HMAC512(SECRET.getBytes()));
+        sharedVerifier = JWT.require(HMAC512(SECRET.getBytes())).build();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        tokenVerifier = new JWTTokenVerifier(registry, 10_000);
+        filter = new JWTAuthorizationFilter(authentication -> authentication, tokenVerifier, registry);
+    }
+
+    @Benchmark
+    public String verifierPerRequest() {
+        return JWT.require(HMAC512(SECRET.getBytes())).build().verify(token).getSubject();
+    }
+
+    @Benchmark
+    public String sharedVerifier() {
+        return sharedVerifier.verify(token).getSubject();
+    }
+
+    @Benchmark
+    public String cachedVerifier() {
+        return tokenVerifier.verify(token);
+    }
+
+    @Benchmark
+    public Object authorizationFilter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/message/");
+        request.addHeader(HEADER_STRING, TOKEN_PREFIX + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+}
@@ -0,0 +1,51 @@
+package ru.job4j.chat.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.MessageDto;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of Message graphs (message, room, person, role)
+ * against the flat MessageDto projections returned by list endpoints
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSerializationBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int size;
+
+    private ObjectMapper mapper;
+
+    private List<Message> messages;
+
+    private List<MessageDto> dtos;
+
+    @Setup
+    public void setUp() {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        messages = Fixtures.messages(size);
+        dtos = messages.stream().map(MessageDto::of).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] serializeEntities() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(messages);
+    }
+
+    @Benchmark
+    public byte[] serializeDtos() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(dtos);
+    }
+}
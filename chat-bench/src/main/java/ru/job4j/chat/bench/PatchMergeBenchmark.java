@@ -0,0 +1,72 @@
+package ru.job4j.chat.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.service.PatchMerger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge step of MessageService.updateMessage: the former per-request reflection against PatchMerger
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatchMergeBenchmark {
+
+    private static final PatchMerger<Message> MERGER = PatchMerger.of(
+            Message.class, Map.of("created", value -> new Timestamp(System.currentTimeMillis()))
+    );
+
+    private Message patch;
+
+    private Message current;
+
+    @Setup
+    public void setUp() {
+        current = Fixtures.messages(1).get(0);
+        patch = new Message();
+        patch.setId(current.getId());
+        patch.setText("Edited text");
+    }
+
+    @Benchmark
+    public Message reflective() throws InvocationTargetException, IllegalAccessException {
+        var methods = current.getClass().getDeclaredMethods();
+        var namePerMethod = new HashMap<String, Method>();
+        for (var method : methods) {
+            var name = method.getName();
+            if (name.startsWith("get") || name.startsWith("set")) {
+                namePerMethod.put(name, method);
+            }
+        }
+        for (var name : namePerMethod.keySet()) {
+            if (name.startsWith("get")) {
+                var getMethod = namePerMethod.get(name);
+                var setMethod = namePerMethod.get(name.replace("get", "set"));
+                Object newValue = getMethod.invoke(patch);
+                if (name.equals("getCreated")) {
+                    newValue = new Timestamp(System.currentTimeMillis());
+                }
+                if (newValue != null) {
+                    setMethod.invoke(current, newValue);
+                }
+            }
+        }
+        return current;
+    }
+
+    @Benchmark
+    public Message methodHandles() {
+        MERGER.merge(patch, current);
+        return current;
+    }
+}
@@ -0,0 +1,85 @@
+package ru.job4j.chat.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of posting throughput of the running application: clients post messages to one room
+ * for the given time, each sends the next post when the previous one completes.
+ * Run it against the same Postgres once with chat.message.write-behind.enabled=false
+ * and once with chat.message.write-behind.enabled=true, and compare posts per second:
+ * java -cp chat-bench/target/benchmarks.jar ru.job4j.chat.bench.PostingLoadTest URL TOKEN ROOM_ID [CONCURRENCY] [SECONDS]
+ */
+public class PostingLoadTest {
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final HttpRequest request;
+
+    public PostingLoadTest(String url, String token, int roomId) {
+        this.request = HttpRequest.newBuilder(URI.create(url + "/message/room/" + roomId))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"text\":\"load test message\"}"))
+                .build();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 3) {
+            System.out.println("Arguments: URL TOKEN ROOM_ID [CONCURRENCY] [SECONDS]");
+            return;
+        }
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        long seconds = args.length > 4 ? Long.parseLong(args[4]) : 30;
+        PostingLoadTest test = new PostingLoadTest(args[0], args[1], Integer.parseInt(args[2]));
+        test.run(concurrency, 5);
+        System.out.println(test.run(concurrency, seconds));
+    }
+
+    /**
+     * Method for posting messages for the given time
+     * @param concurrency - number of clients
+     * @param seconds - duration
+     * @return posts per second, with the number of failed posts
+     * @throws InterruptedException if the test was interrupted
+     */
+    public String run(int concurrency, long seconds) throws InterruptedException {
+        LongAdder posted = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < concurrency; i++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() == 200) {
+                            posted.increment();
+                        } else {
+                            errors.increment();
+                        }
+                    } catch (Exception e) {
+                        errors.increment();
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        return String.format("concurrency %d: %.1f posts/s, posted %d, errors %d",
+                concurrency, posted.sum() / elapsed, posted.sum(), errors.sum());
+    }
+}
@@ -0,0 +1,71 @@
+package ru.job4j.chat.bench;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import ru.job4j.chat.ratelimit.RateLimitProperties;
+import ru.job4j.chat.ratelimit.RateLimiter;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of RateLimiter per request: rule matching and one compare-and-set on the bucket of the user.
+ * Limits are high, so every request is allowed and the whole path is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final int USERS = 1024;
+
+    private RateLimiter limiter;
+
+    private String[] usernames;
+
+    @Setup
+    public void setUp() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setRules(List.of(
+                rule("post-message-moderator", "POST", "/message/room/*", "moderator"),
+                rule("post-message", "POST", "/message/room/*", null)
+        ));
+        limiter = new RateLimiter(properties, new SimpleMeterRegistry(), username -> "user");
+        usernames = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            usernames[i] = "user" + i;
+        }
+    }
+
+    @Benchmark
+    public long manyUsers() {
+        String username = usernames[ThreadLocalRandom.current().nextInt(USERS)];
+        return limiter.acquire(username, "POST", "/message/room/1");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long oneUserContended() {
+        return limiter.acquire("user0", "POST", "/message/room/1");
+    }
+
+    @Benchmark
+    public long notLimitedEndpoint() {
+        return limiter.acquire("user0", "GET", "/message/room/1");
+    }
+
+    private static RateLimitProperties.Rule rule(String name, String method, String path, String role) {
+        RateLimitProperties.Rule rule = new RateLimitProperties.Rule();
+        rule.setName(name);
+        rule.setMethod(method);
+        rule.setPath(path);
+        rule.setRole(role);
+        rule.setCapacity(Integer.MAX_VALUE / 2);
+        rule.setPerSecond(1e9);
+        return rule;
+    }
+}
@@ -0,0 +1,66 @@
+package ru.job4j.chat.bench;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.job4j.chat.model.MessageDto;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Serialization and deserialization of a page of messages in JSON, Smile and CBOR, with and without Blackbird.
+ * Payload sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"false", "true"})
+    private boolean blackbird;
+
+    private ObjectMapper mapper;
+
+    private List<MessageDto> page;
+
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        JsonFactory factory = "smile".equals(format)
+                ? new SmileFactory()
+                : "cbor".equals(format) ? new CBORFactory() : new JsonFactory();
+        Jackson2ObjectMapperBuilder builder = new Jackson2ObjectMapperBuilder().factory(factory);
+        if (blackbird) {
+            builder.modulesToInstall(new BlackbirdModule());
+        }
+        mapper = builder.build();
+        page = Fixtures.messages(500).stream().map(MessageDto::of).collect(Collectors.toList());
+        payload = mapper.writeValueAsBytes(page);
+        System.out.println();
+        System.out.println("Payload of 500 messages, " + format + ": " + payload.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return mapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException {
+        return mapper.readTree(payload);
+    }
+}
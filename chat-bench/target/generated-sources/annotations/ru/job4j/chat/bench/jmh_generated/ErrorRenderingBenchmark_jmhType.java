@@ -0,0 +1,4 @@
+package ru.job4j.chat.bench.jmh_generated;
+public class ErrorRenderingBenchmark_jmhType extends ErrorRenderingBenchmark_jmhType_B3 {
+}
+
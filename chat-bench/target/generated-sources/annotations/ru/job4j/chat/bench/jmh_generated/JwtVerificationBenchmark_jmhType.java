@@ -0,0 +1,4 @@
+package ru.job4j.chat.bench.jmh_generated;
+public class JwtVerificationBenchmark_jmhType extends JwtVerificationBenchmark_jmhType_B3 {
+}
+
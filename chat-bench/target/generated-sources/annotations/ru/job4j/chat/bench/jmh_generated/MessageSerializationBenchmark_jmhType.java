@@ -0,0 +1,4 @@
+package ru.job4j.chat.bench.jmh_generated;
+public class MessageSerializationBenchmark_jmhType extends MessageSerializationBenchmark_jmhType_B3 {
+}
+
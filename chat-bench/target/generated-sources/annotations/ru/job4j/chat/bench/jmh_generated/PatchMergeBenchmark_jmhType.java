@@ -0,0 +1,4 @@
+package ru.job4j.chat.bench.jmh_generated;
+public class PatchMergeBenchmark_jmhType extends PatchMergeBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package ru.job4j.chat.bench.jmh_generated;
+public class RateLimiterBenchmark_jmhType extends RateLimiterBenchmark_jmhType_B3 {
+}
+
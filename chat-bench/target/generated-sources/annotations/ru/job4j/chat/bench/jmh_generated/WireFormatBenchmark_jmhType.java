@@ -0,0 +1,4 @@
+package ru.job4j.chat.bench.jmh_generated;
+public class WireFormatBenchmark_jmhType extends WireFormatBenchmark_jmhType_B3 {
+}
+
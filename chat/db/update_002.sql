@@ -0,0 +1 @@
+create index messages_room_created_id_idx on messages (room_id, created desc, id desc);
@@ -0,0 +1,2 @@
+-- pooled allocation of message IDs, the increment must match Message.ID_ALLOCATION_SIZE
+alter sequence messages_id_seq increment by 50;
@@ -0,0 +1,4 @@
+-- full-text search over message text (PostgreSQL 12+), used by MessageSearchService
+alter table messages add column text_tsv tsvector
+    generated always as (to_tsvector('simple', coalesce(text, ''))) stored;
+create index messages_text_tsv_idx on messages using gin (text_tsv);
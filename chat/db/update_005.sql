@@ -0,0 +1,7 @@
+-- last message read by person in room, flushed in batches by ReadCursorService
+create table read_cursors (
+    person_id int references persons(id) on delete cascade,
+    room_id int references rooms(id) on delete cascade,
+    last_read_id int not null,
+    primary key (person_id, room_id)
+);
@@ -0,0 +1,37 @@
+-- range partitioning of messages by month of creation (PostgreSQL 12+).
+-- Partitions ahead of time are created by MessagePartitionMaintainer, old partitions are archived by it.
+-- There is no default partition, so ordered scans of recent history stop at the newest partitions.
+alter table messages rename to messages_unpartitioned;
+alter sequence messages_id_seq owned by none;
+update messages_unpartitioned
+set created = coalesce((select min(created) from messages_unpartitioned), now())
+where created is null;
+
+create table messages (
+    id int not null default nextval('messages_id_seq'),
+    text varchar (2000),
+    created timestamp not null,
+    room_id int references rooms(id) on delete cascade,
+    person_id int references persons(id) on delete cascade,
+    text_tsv tsvector generated always as (to_tsvector('simple', coalesce(text, ''))) stored,
+    primary key (id, created)
+) partition by range (created);
+
+do $$
+declare
+    month timestamp := date_trunc('month', coalesce((select min(created) from messages_unpartitioned), now()));
+begin
+    while month <= date_trunc('month', now()) + interval '3 months' loop
+        execute format('create table %I partition of messages for values from (%L) to (%L)',
+                       'messages_p' || to_char(month, 'YYYYMM'), month, month + interval '1 month');
+        month := month + interval '1 month';
+    end loop;
+end $$;
+
+insert into messages (id, text, created, room_id, person_id)
+select id, text, created, room_id, person_id from messages_unpartitioned;
+drop table messages_unpartitioned;
+alter sequence messages_id_seq owned by messages.id;
+
+create index messages_room_created_id_idx on messages (room_id, created desc, id desc);
+create index messages_text_tsv_idx on messages using gin (text_tsv);
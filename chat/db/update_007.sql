@@ -0,0 +1,11 @@
+-- notification of every new message for other chat instances (ClusterEventBus).
+-- Payload: message ID, room ID and application_name of the inserting connection (node ID of the instance).
+create function notify_message_created() returns trigger as $$
+begin
+    perform pg_notify('chat_messages', new.id || ',' || new.room_id || ',' || current_setting('application_name'));
+    return null;
+end
+$$ language plpgsql;
+
+create trigger messages_notify_created after insert on messages
+    for each row execute function notify_message_created();
@@ -0,0 +1,13 @@
+-- keys of idempotent message posts (IdempotentMessageService).
+-- A row is reserved with null message_id before the insert of message and completed after it,
+-- so only one instance creates the message of the key. Rows older than the dedup window are deleted.
+-- message_id has no foreign key: messages are partitioned and keyed by (id, created).
+create table message_idempotency (
+    person_id int references persons(id) on delete cascade,
+    idempotency_key varchar(255) not null,
+    message_id int,
+    created timestamp not null default now(),
+    primary key (person_id, idempotency_key)
+);
+
+create index message_idempotency_created_idx on message_idempotency (created);
@@ -0,0 +1,17 @@
+-- versions of cached resources (ResourceVersionService): room and role catalogs and history of every room.
+-- A version is bumped after every change of its resource, ETags of responses are built from it.
+-- Every change is notified on channel chat_versions, so instances keep their copies of versions current.
+create table resource_versions (
+    resource varchar(64) primary key,
+    version bigint not null
+);
+
+create function notify_resource_version() returns trigger as $$
+begin
+    perform pg_notify('chat_versions', new.resource || ',' || new.version);
+    return null;
+end
+$$ language plpgsql;
+
+create trigger resource_versions_notify after insert or update on resource_versions
+    for each row execute function notify_resource_version();
@@ -0,0 +1,11 @@
+-- messages that write-behind ingestion (MessageWriteBehind) could not insert after retries, kept for replay.
+-- There are no foreign keys: a row may have failed because its room or person was deleted.
+create table message_dead_letters (
+    id int primary key,
+    text varchar(2000),
+    created timestamp not null,
+    room_id int,
+    person_id int,
+    error text,
+    failed timestamp not null default now()
+);
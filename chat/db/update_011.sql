@@ -0,0 +1,57 @@
+-- number of messages of every room, unread counter of persons without read cursor (ReadCursorService).
+-- Kept by statement triggers on messages, so a batch insert updates the row of each room once.
+-- Detaching a partition does not fire triggers: MessagePartitionMaintainer subtracts messages of the partition
+-- in the transaction that drops it and notifies channel chat_archived with room ID and number of messages.
+create table room_message_counts (
+    room_id int primary key references rooms(id) on delete cascade,
+    total bigint not null
+);
+
+insert into room_message_counts (room_id, total)
+select room_id, count(*) from messages where room_id is not null group by room_id;
+
+create function count_inserted_messages() returns trigger as $$
+begin
+    insert into room_message_counts (room_id, total)
+    select room_id, count(*) from inserted where room_id is not null group by room_id
+    on conflict (room_id) do update set total = room_message_counts.total + excluded.total;
+    return null;
+end
+$$ language plpgsql;
+
+create function count_deleted_messages() returns trigger as $$
+begin
+    update room_message_counts c set total = c.total - d.total
+    from (select room_id, count(*) as total from deleted group by room_id) d
+    where c.room_id = d.room_id;
+    return null;
+end
+$$ language plpgsql;
+
+create function count_moved_messages() returns trigger as $$
+begin
+    insert into room_message_counts (room_id, total)
+    select room_id, sum(delta) from (
+        select room_id, -1 as delta from old_rows
+        union all
+        select room_id, 1 as delta from new_rows
+    ) moved
+    where room_id is not null
+    group by room_id
+    having sum(delta) <> 0
+    on conflict (room_id) do update set total = room_message_counts.total + excluded.total;
+    return null;
+end
+$$ language plpgsql;
+
+create trigger messages_count_inserted after insert on messages
+    referencing new table as inserted
+    for each statement execute function count_inserted_messages();
+
+create trigger messages_count_deleted after delete on messages
+    referencing old table as deleted
+    for each statement execute function count_deleted_messages();
+
+create trigger messages_count_moved after update on messages
+    referencing old table as old_rows new table as new_rows
+    for each statement execute function count_moved_messages();
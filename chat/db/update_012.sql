@@ -0,0 +1,12 @@
+-- message IDs are allocated in blocks and do not follow creation order, so read cursors are compared
+-- by (created, id) as the room keyset pagination does. Cursors of archived messages start from the beginning
+-- of the room: every remaining message of the room is newer than them.
+alter table read_cursors add column last_read_created timestamp;
+
+update read_cursors c set last_read_created = m.created
+from messages m
+where m.room_id = c.room_id and m.id = c.last_read_id;
+
+update read_cursors set last_read_created = '-infinity' where last_read_created is null;
+
+alter table read_cursors alter column last_read_created set not null;
@@ -2,18 +2,19 @@ package ru.job4j.chat;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.web.client.RestTemplate;
 
-@SpringBootApplication
+/**
+ * R2DBC serves only non-transactional reactive reads, its transaction manager would make
+ * the JPA transaction manager ambiguous for @Transactional
+ */
+@SpringBootApplication(exclude = R2dbcTransactionManagerAutoConfiguration.class)
+@EnableScheduling
 public class ChatApplication {
 
-    @Bean
-    public RestTemplate getTemplate() {
-        return new RestTemplate();
-    }
-
     @Bean
     public BCryptPasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
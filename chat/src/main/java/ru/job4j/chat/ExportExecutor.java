@@ -0,0 +1,77 @@
+package ru.job4j.chat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dedicated size-limited executor for exports of messages.
+ * An export may run for chat.export.timeout milliseconds, so exports run on at most chat.export.threads threads
+ * with at most chat.export.queue-capacity waiting exports instead of the small shared applicationTaskExecutor,
+ * where a few exports would hold every thread of other asynchronous work. Exports above the bound are rejected at once.
+ */
+@Component
+public class ExportExecutor implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Maximum duration of one export, waiting included, in milliseconds
+     */
+    private final long timeout;
+
+    public ExportExecutor(MeterRegistry registry,
+                          @Value("${chat.export.threads:4}") int threads,
+                          @Value("${chat.export.queue-capacity:0}") int queueCapacity,
+                          @Value("${chat.export.timeout:3600000}") long timeout) {
+        this.timeout = timeout;
+        AtomicInteger number = new AtomicInteger();
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                queue,
+                task -> {
+                    Thread thread = new Thread(task, "export-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        new ExecutorServiceMetrics(executor, "export", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * Method for running export task
+     * @param task - export task
+     * @return future of task, cancelling it interrupts the export thread
+     * @throws RejectedExecutionException if the executor is saturated
+     */
+    public Future<?> submit(Runnable task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Method for getting maximum duration of one export
+     * @return timeout in milliseconds
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
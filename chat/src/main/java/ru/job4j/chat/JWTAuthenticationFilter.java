@@ -2,7 +2,9 @@ package ru.job4j.chat;
 
 import com.auth0.jwt.JWT;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
@@ -10,16 +12,29 @@ import org.springframework.security.core.userdetails.User;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import ru.job4j.chat.model.Person;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
 
+/**
+ * Login filter. Password hashing runs on LoginExecutor and the request is put into servlet async mode meanwhile,
+ * so a login holds no request thread while it waits for the executor or hashes.
+ * Logins that do not fit into the executor, or do not finish within chat.login.timeout, get 503 with Retry-After.
+ */
 public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilter {
 
     public static final String SECRET = "SecretKeyToGenJWTs";
@@ -32,29 +47,86 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
 
     public static final String SIGN_UP_URL = "/users/sign-up";
 
+    /**
+     * Seconds a rejected client should wait before the next login
+     */
+    public static final String LOGIN_RETRY_AFTER = "1";
+
     public AuthenticationManager authenticationManager;
 
-    public JWTAuthenticationFilter(AuthenticationManager authenticationManager) {
+    private final ObjectMapper mapper;
+
+    private final LoginExecutor loginExecutor;
+
+    public JWTAuthenticationFilter(AuthenticationManager authenticationManager,
+                                   ObjectMapper mapper,
+                                   LoginExecutor loginExecutor) {
         this.authenticationManager = authenticationManager;
+        this.mapper = mapper;
+        this.loginExecutor = loginExecutor;
     }
 
+    /**
+     * Method for authenticating login request asynchronously, other requests pass through
+     * @param request - request
+     * @param response - response
+     * @param chain - filter chain
+     * @throws IOException if the response can not be written
+     * @throws ServletException if the chain failed
+     */
     @Override
-    public Authentication attemptAuthentication(
-            HttpServletRequest req,
-            HttpServletResponse resp) throws AuthenticationException {
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse resp = (HttpServletResponse) response;
+        if (!requiresAuthentication(req, resp)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        UsernamePasswordAuthenticationToken authRequest;
         try {
-            Person creds = new ObjectMapper().readValue(
-                    req.getInputStream(), Person.class
-            );
-            return authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(
-                            creds.getUsername(),
-                            creds.getPassword(),
-                            new ArrayList<>()
-                    )
-            );
+            authRequest = readCredentials(req);
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            unsuccessfulAuthentication(req, resp, new AuthenticationServiceException("Invalid credentials", e));
+            return;
+        }
+        AsyncContext async = req.startAsync(req, resp);
+        async.setTimeout(loginExecutor.getTimeout());
+        AtomicBoolean done = new AtomicBoolean();
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (done.compareAndSet(false, true)) {
+                    reject(resp, "Login timed out, please try again later");
+                    async.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        try {
+            loginExecutor.submit(() -> authenticationManager.authenticate(authRequest))
+                    .whenComplete((authentication, error) -> {
+                        if (done.compareAndSet(false, true)) {
+                            finish(req, resp, chain, authentication, error);
+                            async.complete();
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            if (done.compareAndSet(false, true)) {
+                reject(resp, "Too many logins, please try again later");
+                async.complete();
+            }
         }
     }
 
@@ -72,4 +144,54 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
         resp.addHeader(HEADER_STRING, TOKEN_PREFIX + token);
 
     }
+
+    /**
+     * Private method for reading credentials of login request
+     * @param req - request
+     * @return authentication request
+     * @throws IOException if the body is not a valid Person
+     */
+    private UsernamePasswordAuthenticationToken readCredentials(HttpServletRequest req) throws IOException {
+        Person creds = mapper.readValue(req.getInputStream(), Person.class);
+        return new UsernamePasswordAuthenticationToken(
+                creds.getUsername(),
+                creds.getPassword(),
+                new ArrayList<>()
+        );
+    }
+
+    /**
+     * Private method for writing the result of login on the thread that finished it
+     * @param req - request
+     * @param resp - response
+     * @param chain - filter chain
+     * @param authentication - authentication, null when it failed
+     * @param error - failure of authentication, null when it succeeded
+     */
+    private void finish(HttpServletRequest req, HttpServletResponse resp, FilterChain chain,
+                        Authentication authentication, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        try {
+            if (cause == null) {
+                successfulAuthentication(req, resp, chain, authentication);
+            } else if (cause instanceof AuthenticationException) {
+                unsuccessfulAuthentication(req, resp, (AuthenticationException) cause);
+            } else {
+                unsuccessfulAuthentication(req, resp, new AuthenticationServiceException("Login failed", cause));
+            }
+        } catch (IOException | ServletException | RuntimeException e) {
+            logger.warn("Result of login is not written", e);
+        }
+    }
+
+    /**
+     * Private method for rejecting login that does not fit into the login executor
+     * @param resp - response
+     * @param message - reason
+     * @throws IOException if the response can not be written
+     */
+    private static void reject(HttpServletResponse resp, String message) throws IOException {
+        resp.setHeader("Retry-After", LOGIN_RETRY_AFTER);
+        resp.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), message);
+    }
 }
@@ -1,7 +1,7 @@
 package ru.job4j.chat;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -19,8 +19,18 @@ import static ru.job4j.chat.JWTAuthenticationFilter.*;
 
 public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
 
-    public JWTAuthorizationFilter(AuthenticationManager authenticationManager) {
+    public static final String TIMER = "chat.jwt.filter";
+
+    private final JWTTokenVerifier tokenVerifier;
+
+    private final MeterRegistry registry;
+
+    public JWTAuthorizationFilter(AuthenticationManager authenticationManager,
+                                  JWTTokenVerifier tokenVerifier,
+                                  MeterRegistry registry) {
         super(authenticationManager);
+        this.tokenVerifier = tokenVerifier;
+        this.registry = registry;
     }
 
     @Override
@@ -32,7 +42,15 @@ public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
             chain.doFilter(req, resp);
             return;
         }
-        UsernamePasswordAuthenticationToken authenticationToken = getAuthentication(req);
+        Timer.Sample sample = Timer.start(registry);
+        String result = "failed";
+        UsernamePasswordAuthenticationToken authenticationToken;
+        try {
+            authenticationToken = getAuthentication(req);
+            result = authenticationToken == null ? "anonymous" : "authenticated";
+        } finally {
+            sample.stop(registry.timer(TIMER, "result", result));
+        }
         SecurityContextHolder.getContext().setAuthentication(authenticationToken);
         chain.doFilter(req, resp);
     }
@@ -41,10 +59,7 @@ public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
             HttpServletRequest req) {
         String token = req.getHeader(HEADER_STRING);
         if (token != null) {
-            String user = JWT.require(Algorithm.HMAC512(SECRET.getBytes()))
-                    .build()
-                    .verify(token.replace(TOKEN_PREFIX, ""))
-                    .getSubject();
+            String user = tokenVerifier.verify(token.replace(TOKEN_PREFIX, ""));
             if (user != null) {
                 return new UsernamePasswordAuthenticationToken(
                         user,
@@ -0,0 +1,127 @@
+package ru.job4j.chat;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static ru.job4j.chat.JWTAuthenticationFilter.SECRET;
+
+/**
+ * Shared verification of JWT for HTTP requests and STOMP sessions.
+ * Verified tokens are cached by SHA-256 digest until their expiration time,
+ * so repeated requests with the same token skip HMAC verification.
+ * The cache is lock-free for reads, every request thread looks it up.
+ */
+@Component
+public class JWTTokenVerifier {
+
+    /**
+     * Name of the cache in metrics
+     */
+    private static final String CACHE_NAME = "jwt-tokens";
+
+    /**
+     * Verifier is thread-safe and built once
+     */
+    private final JWTVerifier verifier = JWT.require(HMAC512(SECRET.getBytes())).build();
+
+    /**
+     * Verified tokens by digest of token
+     */
+    private final Cache<String, Verified> verified;
+
+    public JWTTokenVerifier(MeterRegistry registry,
+                            @Value("${chat.jwt.cache-size:10000}") int cacheSize) {
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new UntilExpiration())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, verified, CACHE_NAME);
+    }
+
+    /**
+     * Method for verifying token
+     * @param token - JWT without "Bearer " prefix
+     * @return subject of token (username), may be null
+     * @throws JWTVerificationException if the token is invalid or expired
+     */
+    public String verify(String token) throws JWTVerificationException {
+        String digest = digest(token);
+        Verified cached = verified.getIfPresent(digest);
+        if (cached != null) {
+            return cached.subject;
+        }
+        DecodedJWT decoded = verifier.verify(token);
+        if (decoded.getSubject() != null && decoded.getExpiresAt() != null) {
+            verified.put(digest, new Verified(decoded.getSubject(), decoded.getExpiresAt().getTime()));
+        }
+        return decoded.getSubject();
+    }
+
+    /**
+     * Private method for getting SHA-256 digest of token
+     * @param token - JWT
+     * @return digest encoded to Base64
+     */
+    private String digest(String token) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(sha.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Subject of verified token with expiration time of token in milliseconds
+     */
+    private static final class Verified {
+
+        private final String subject;
+
+        private final long expiresAt;
+
+        private Verified(String subject, long expiresAt) {
+            this.subject = subject;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Expiration of cached token at expiration time of token
+     */
+    private static final class UntilExpiration implements Expiry<String, Verified> {
+
+        @Override
+        public long expireAfterCreate(String key, Verified value, long currentTime) {
+            long left = value.expiresAt - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(left, 0));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Verified value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Verified value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.job4j.chat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated size-limited executor for password hashing on login.
+ * BCrypt runs on at most chat.login.threads threads with at most chat.login.queue-capacity waiting logins,
+ * so a login burst can not take every request thread. Logins above the bound are rejected at once.
+ * Request threads do not wait for the result, JWTAuthenticationFilter completes the request asynchronously.
+ */
+@Component
+public class LoginExecutor implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Maximum duration of one login, waiting included, in milliseconds
+     */
+    private final long timeout;
+
+    public LoginExecutor(MeterRegistry registry,
+                         @Value("${chat.login.threads:0}") int threads,
+                         @Value("${chat.login.queue-capacity:64}") int queueCapacity,
+                         @Value("${chat.login.timeout:10000}") long timeout) {
+        this.timeout = timeout;
+        int size = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger number = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "login-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        new ExecutorServiceMetrics(executor, "login", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * Method for running login task
+     * @param task - authentication task
+     * @param <T> - type of result
+     * @return result of task, completed on the login thread
+     * @throws RejectedExecutionException if the executor is saturated
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    /**
+     * Method for getting maximum duration of one login
+     * @return timeout in milliseconds
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,70 @@
+package ru.job4j.chat;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writers of streams returned as Flux from Spring MVC (ReactiveMessageController).
+ * MVC writes every item of such a stream on the executor of asynchronous requests with a blocking write,
+ * so a client that stops reading holds a writer thread until the write completes or the connection times out,
+ * and items of other streams wait in the queue meanwhile. The streams get their own pool of
+ * chat.reactive.writer-threads threads instead of the small shared applicationTaskExecutor:
+ * up to that many stalled readers do not delay other streams or other asynchronous work of the application.
+ * With chat.virtual-threads.enabled every item is written on a new virtual thread instead.
+ * Streams are closed after chat.reactive.timeout milliseconds, clients resume them with ?after=.
+ * Other asynchronous endpoints (SseEmitter, DeferredResult of exports) set their own timeouts.
+ * The executor is not a bean, so Spring Boot still creates applicationTaskExecutor.
+ */
+@Configuration
+public class ReactiveStreamConfig implements WebMvcConfigurer, DisposableBean {
+
+    private final long timeout;
+
+    private final ThreadPoolTaskExecutor pool;
+
+    private final ExecutorService virtual;
+
+    public ReactiveStreamConfig(@Value("${chat.reactive.writer-threads:64}") int writerThreads,
+                                @Value("${chat.reactive.writer-queue-capacity:10000}") int queueCapacity,
+                                @Value("${chat.reactive.timeout:1800000}") long timeout,
+                                @Value("${chat.virtual-threads.enabled:false}") boolean virtualThreads) {
+        this.timeout = timeout;
+        if (virtualThreads) {
+            this.pool = null;
+            this.virtual = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("reactive-writer-", 0).factory());
+        } else {
+            this.pool = new ThreadPoolTaskExecutor();
+            this.pool.setCorePoolSize(writerThreads);
+            this.pool.setMaxPoolSize(writerThreads);
+            this.pool.setQueueCapacity(queueCapacity);
+            this.pool.setThreadNamePrefix("reactive-writer-");
+            this.pool.initialize();
+            this.virtual = null;
+        }
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        AsyncTaskExecutor executor = pool != null ? pool : new TaskExecutorAdapter(virtual);
+        configurer.setTaskExecutor(executor);
+        configurer.setDefaultTimeout(timeout);
+    }
+
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.shutdown();
+        } else {
+            virtual.shutdown();
+        }
+    }
+}
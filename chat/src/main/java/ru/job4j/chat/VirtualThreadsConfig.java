@@ -0,0 +1,40 @@
+package ru.job4j.chat;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in execution of requests on virtual threads (chat.virtual-threads.enabled).
+ * Tomcat runs every request on a new virtual thread instead of its bounded pool,
+ * asynchronous MVC work (SSE streams, NDJSON export) runs on virtual threads too.
+ * Number of concurrent requests is then limited by server.tomcat.max-connections and the database pool.
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandler() {
+        return protocolHandler -> protocolHandler.setExecutor(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-virtual-", 0).factory())
+        );
+    }
+
+    /**
+     * Executor of asynchronous MVC requests, replaces the pool of Spring Boot
+     * @return AsyncTaskExecutor object
+     */
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("task-virtual-", 0).factory())
+        );
+    }
+}
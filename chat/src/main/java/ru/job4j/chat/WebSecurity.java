@@ -1,48 +1,95 @@
 package ru.job4j.chat;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpMethod;
-import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
+import ru.job4j.chat.ratelimit.RateLimitFilter;
+import ru.job4j.chat.ratelimit.RateLimiter;
 import ru.job4j.chat.service.UserDetailsServiceImpl;
+import ru.job4j.chat.websocket.WebSocketConfig;
 
 import static ru.job4j.chat.JWTAuthenticationFilter.SIGN_UP_URL;
 
+/**
+ * Security of the application: stateless JWT authentication, rate limits and CORS
+ */
 @EnableWebSecurity
-public class WebSecurity extends WebSecurityConfigurerAdapter {
+public class WebSecurity {
 
     private final UserDetailsServiceImpl userDetailsService;
 
     private final BCryptPasswordEncoder bCryptPasswordEncoder;
 
+    private final JWTTokenVerifier tokenVerifier;
+
+    private final LoginExecutor loginExecutor;
+
+    private final ObjectMapper mapper;
+
+    private final MeterRegistry registry;
+
+    private final RateLimiter rateLimiter;
+
     public WebSecurity(
             UserDetailsServiceImpl userDetailsService,
-            BCryptPasswordEncoder bCryptPasswordEncoder) {
+            BCryptPasswordEncoder bCryptPasswordEncoder,
+            JWTTokenVerifier tokenVerifier,
+            LoginExecutor loginExecutor,
+            ObjectMapper mapper,
+            MeterRegistry registry,
+            RateLimiter rateLimiter) {
         this.userDetailsService = userDetailsService;
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.tokenVerifier = tokenVerifier;
+        this.loginExecutor = loginExecutor;
+        this.mapper = mapper;
+        this.registry = registry;
+        this.rateLimiter = rateLimiter;
     }
 
-    @Override
-    protected void configure(HttpSecurity http) throws Exception {
+    /**
+     * Method for building the filter chain of the application
+     * @param http - builder of the filter chain
+     * @return filter chain
+     * @throws Exception if the chain can not be built
+     */
+    @Bean
+    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+        AuthenticationManager authenticationManager = authenticationManager();
         http.cors().and().csrf().disable().authorizeRequests()
                 .antMatchers(HttpMethod.POST, SIGN_UP_URL).permitAll()
+                .antMatchers(WebSocketConfig.ENDPOINT + "/**").permitAll()
                 .anyRequest().authenticated()
                 .and()
-                .addFilter(new JWTAuthenticationFilter(authenticationManager()))
-                .addFilter(new JWTAuthorizationFilter(authenticationManager()))
+                .authenticationManager(authenticationManager)
+                .addFilter(new JWTAuthenticationFilter(authenticationManager, mapper, loginExecutor))
+                .addFilter(new JWTAuthorizationFilter(authenticationManager, tokenVerifier, registry))
+                .addFilterAfter(new RateLimitFilter(rateLimiter), JWTAuthorizationFilter.class)
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+        return http.build();
     }
 
-    @Override
-    public void configure(AuthenticationManagerBuilder authMng) throws Exception {
-        authMng.userDetailsService(userDetailsService).passwordEncoder(bCryptPasswordEncoder);
+    /**
+     * Private method for building the manager that checks username and password of logins
+     * @return authentication manager
+     */
+    private AuthenticationManager authenticationManager() {
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+        provider.setUserDetailsService(userDetailsService);
+        provider.setPasswordEncoder(bCryptPasswordEncoder);
+        return new ProviderManager(provider);
     }
 
     @Bean
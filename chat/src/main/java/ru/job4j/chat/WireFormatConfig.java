@@ -0,0 +1,67 @@
+package ru.job4j.chat;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Binary wire formats for clients that ask for them with the Accept header:
+ * application/x-jackson-smile and application/cbor. JSON stays the default.
+ * The default Smile and CBOR converters of Spring MVC use mappers without the settings of Spring Boot,
+ * so they are replaced in place with converters built by the Boot builder.
+ * Blackbird module replaces reflective field access of Jackson with generated lambdas for all formats.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class WireFormatConfig implements WebMvcConfigurer {
+
+    /**
+     * Spring Boot builder with the same modules and settings as the JSON mapper
+     */
+    private final ObjectProvider<Jackson2ObjectMapperBuilder> builders;
+
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        replace(converters, new MappingJackson2SmileHttpMessageConverter(
+                builders.getObject().factory(new SmileFactory()).build()
+        ));
+        replace(converters, new MappingJackson2CborHttpMessageConverter(
+                builders.getObject().factory(new CBORFactory()).build()
+        ));
+    }
+
+    /**
+     * Private method for replacing converters of the same type with the converter,
+     * it takes the position of the first replaced one, or the last position
+     * @param converters - converters of Spring MVC
+     * @param converter - new converter
+     */
+    private static void replace(List<HttpMessageConverter<?>> converters, HttpMessageConverter<?> converter) {
+        Class<?> type = converter.getClass();
+        int position = converters.size();
+        for (int i = converters.size() - 1; i >= 0; i--) {
+            if (type.isInstance(converters.get(i))) {
+                converters.remove(i);
+                position = i;
+            }
+        }
+        converters.add(Math.min(position, converters.size()), converter);
+    }
+}
@@ -0,0 +1,116 @@
+package ru.job4j.chat.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Thread-safe LRU cache with a fixed upper bound on the number of entries.
+ * Entries may have their own expiration time, expired entries are dropped on access.
+ * @param <K> - type of key
+ * @param <V> - type of value
+ */
+public class BoundedCache<K, V> {
+
+    /**
+     * Expiration time of entries that never expire
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Maximum number of entries, the least recently used entry is dropped above it
+     */
+    private final int maxSize;
+
+    /**
+     * Entries in access order
+     */
+    private final Map<K, Entry<V>> entries;
+
+    public BoundedCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Size of cache must be positive. Actual value: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > BoundedCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Method for getting cached value by key
+     * @param key - key
+     * @return value (wrapped to optional)
+     */
+    public synchronized Optional<V> get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            entry = null;
+        }
+        return entry == null ? Optional.empty() : Optional.of(entry.value);
+    }
+
+    /**
+     * Method for putting value to the cache, the value never expires
+     * @param key - key
+     * @param value - value, null values are not cached
+     */
+    public void put(K key, V value) {
+        put(key, value, NEVER);
+    }
+
+    /**
+     * Method for putting value to the cache
+     * @param key - key
+     * @param value - value, null values are not cached
+     * @param expiresAt - expiration time in milliseconds since epoch
+     */
+    public synchronized void put(K key, V value, long expiresAt) {
+        if (value != null) {
+            entries.put(key, new Entry<>(value, expiresAt));
+        }
+    }
+
+    /**
+     * Method for removing value from the cache
+     * @param key - key
+     */
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Method for removing all values from the cache
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Method for getting current number of entries
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Cached value with its expiration time
+     * @param <V> - type of value
+     */
+    private static class Entry<V> {
+
+        private final V value;
+
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,14 +1,39 @@
 package ru.job4j.chat.controller;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.job4j.chat.ExportExecutor;
 import ru.job4j.chat.handlers.Operation;
 import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.MessageBatchItem;
+import ru.job4j.chat.model.MessageBatchResult;
+import ru.job4j.chat.model.MessageDto;
+import ru.job4j.chat.model.MessageSearchPage;
+import ru.job4j.chat.service.EntityResolver;
+import ru.job4j.chat.service.IdempotentMessageService;
+import ru.job4j.chat.service.MessageBatchService;
+import ru.job4j.chat.service.MessageEventStreamService;
+import ru.job4j.chat.service.MessageExportService;
+import ru.job4j.chat.service.MessageSearchService;
 import ru.job4j.chat.service.MessageService;
+import ru.job4j.chat.service.ResourceVersionService;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Rest controller for working with models of Message
@@ -16,20 +41,199 @@ import java.util.List;
 @RestController
 @Validated
 @RequestMapping("/message")
-@RequiredArgsConstructor
 public class MessageController {
+    /**
+     * Seconds a rejected export waits before the next attempt
+     */
+    private static final String EXPORT_RETRY_AFTER = "60";
+
     /**
      * Business logic for working with object of Message
      */
     private final MessageService messageService;
 
     /**
-     * GET method for getting all messages
+     * Logic for streaming export of messages
+     */
+    private final MessageExportService messageExportService;
+
+    /**
+     * Logic for Server-Sent Events streams of rooms
+     */
+    private final MessageEventStreamService messageEventStreamService;
+
+    /**
+     * Logic for full-text search of messages
+     */
+    private final MessageSearchService messageSearchService;
+
+    /**
+     * Logic for creating messages once per idempotency key
+     */
+    private final IdempotentMessageService idempotentMessageService;
+
+    /**
+     * Logic for batch reads and writes of messages
+     */
+    private final MessageBatchService messageBatchService;
+
+    /**
+     * Versions of room histories for ETags
+     */
+    private final ResourceVersionService versions;
+
+    /**
+     * Used for checking that the room exists before opening a stream
+     */
+    private final EntityResolver resolver;
+
+    /**
+     * Dedicated size-limited executor of exports
+     */
+    private final ExportExecutor exportExecutor;
+
+    public MessageController(MessageService messageService,
+                             MessageExportService messageExportService,
+                             MessageEventStreamService messageEventStreamService,
+                             MessageSearchService messageSearchService,
+                             IdempotentMessageService idempotentMessageService,
+                             MessageBatchService messageBatchService,
+                             ResourceVersionService versions,
+                             EntityResolver resolver,
+                             ExportExecutor exportExecutor) {
+        this.messageService = messageService;
+        this.messageExportService = messageExportService;
+        this.messageEventStreamService = messageEventStreamService;
+        this.messageSearchService = messageSearchService;
+        this.idempotentMessageService = idempotentMessageService;
+        this.messageBatchService = messageBatchService;
+        this.versions = versions;
+        this.resolver = resolver;
+        this.exportExecutor = exportExecutor;
+    }
+
+    /**
+     * GET method for getting page of all messages, newest first
+     * @param before - message ID, only older messages are returned
+     * @param limit - size of page
      * @return List of messages
      */
     @GetMapping("/")
-    public List<Message> findAll() {
-        return messageService.findAllMessages();
+    public List<MessageDto> findAll(
+            @RequestParam(required = false) Integer before,
+            @RequestParam(defaultValue = "" + MessageService.DEFAULT_PAGE_SIZE) int limit) {
+        return messageService.findAllMessages(before, limit);
+    }
+
+    /**
+     * GET method for getting many messages by IDs with one query
+     * @param ids - message IDs, comma separated
+     * @return results in the order of IDs, with an error for every missing message
+     */
+    @GetMapping(value = "", params = "ids")
+    public List<MessageBatchResult> findByIds(@RequestParam List<Integer> ids) {
+        return messageBatchService.findMessages(ids);
+    }
+
+    /**
+     * GET method for getting page of room history, newest first.
+     * Answered with 304 when If-None-Match has the current ETag of the page.
+     * @param id - room ID
+     * @param before - message ID, only older messages are returned
+     * @param beforeCreated - creation time of the message before (ISO date-time), needed when it may be deleted
+     * @param limit - size of page
+     * @param request - current request
+     * @return List of messages
+     */
+    @GetMapping("/room/{id}")
+    public ResponseEntity<List<MessageDto>> findByRoomId(
+            @PathVariable("id") int id,
+            @RequestParam(required = false) Integer before,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeCreated,
+            @RequestParam(defaultValue = "" + MessageService.DEFAULT_PAGE_SIZE) int limit,
+            WebRequest request) {
+        String etag = versions.etag(ResourceVersionService.room(id), request);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(messageService.findRoomMessages(
+                        id, before, beforeCreated == null ? null : Timestamp.valueOf(beforeCreated), limit
+                ));
+    }
+
+    /**
+     * GET method for streaming new messages of the room as Server-Sent Events
+     * @param id - room ID
+     * @param lastEventId - ID of the last message seen by reconnecting client
+     * @return SSE stream
+     */
+    @GetMapping(value = "/room/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(
+            @PathVariable("id") int id,
+            @RequestHeader(value = "Last-Event-ID", required = false) Integer lastEventId) {
+        resolver.resolveRoom(id);
+        return messageEventStreamService.subscribe(id, lastEventId);
+    }
+
+    /**
+     * GET method for full-text search of messages, best match first
+     * @param q - search query
+     * @param room - room ID (all rooms when absent)
+     * @param cursor - cursor of next page from previous response
+     * @param limit - size of page
+     * @return page of found messages with cursor of next page
+     */
+    @GetMapping("/search")
+    public MessageSearchPage search(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer room,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + MessageService.DEFAULT_PAGE_SIZE) int limit) {
+        return messageSearchService.search(q, room, cursor, limit);
+    }
+
+    /**
+     * GET method for exporting messages as NDJSON stream, oldest first.
+     * The export runs on the dedicated ExportExecutor with its own timeout chat.export.timeout,
+     * independent of the timeout of other asynchronous requests. The export thread is interrupted on timeout.
+     * An export above the bound of the executor is answered with 503 and Retry-After.
+     * @param room - room ID (all rooms when absent)
+     * @param from - start of time range, inclusive (ISO date-time)
+     * @param to - end of time range, exclusive (ISO date-time)
+     * @param response - response, messages are written to its body, one JSON object per line
+     * @return result of the export, null when the export is rejected
+     * @throws IOException if the rejection can not be written
+     */
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public DeferredResult<Void> export(
+            @RequestParam(required = false) Integer room,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            HttpServletResponse response) throws IOException {
+        Timestamp start = from == null ? null : Timestamp.valueOf(from);
+        Timestamp end = to == null ? null : Timestamp.valueOf(to);
+        DeferredResult<Void> result = new DeferredResult<>(exportExecutor.getTimeout());
+        Future<?> task;
+        try {
+            task = exportExecutor.submit(() -> {
+                try {
+                    response.setContentType("application/x-ndjson");
+                    messageExportService.exportMessages(room, start, end, response.getOutputStream());
+                    response.flushBuffer();
+                    result.setResult(null);
+                } catch (Exception e) {
+                    result.setErrorResult(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            response.setHeader("Retry-After", EXPORT_RETRY_AFTER);
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many exports, please try again later");
+            return null;
+        }
+        result.onTimeout(() -> task.cancel(true));
+        return result;
     }
 
     /**
@@ -38,7 +242,7 @@ public class MessageController {
      * @return List of messages
      */
     @GetMapping("/byUserId/{id}")
-    public List<Message> findByUserId(@PathVariable int id) {
+    public List<MessageDto> findByUserId(@PathVariable int id) {
         return messageService.findMessagesByUserId(id);
     }
 
@@ -48,7 +252,7 @@ public class MessageController {
      * @return Message
      */
     @GetMapping("/{id}")
-    public Message findById(@PathVariable int id) {
+    public MessageDto findById(@PathVariable int id) {
             return messageService.findMessageByMessageId(id);
     }
 
@@ -56,13 +260,29 @@ public class MessageController {
      * POST method for creating new message
      * @param id - room ID
      * @param message - Message
-     * @param token - String token JWT
+     * @param idempotencyKey - key of client, repeats of the key return the message created first
      * @return Created object of Message
      */
     @PostMapping("/room/{id}")
     @Validated(Operation.OnCreate.class)
-    public Message create(@PathVariable("id") int id, @Valid @RequestBody Message message, @RequestHeader("Authorization") String token) {
-        return messageService.addMessage(id, message, token);
+    public MessageDto create(
+            @PathVariable("id") int id,
+            @Valid @RequestBody Message message,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return idempotentMessageService.addMessage(id, message, idempotencyKey);
+        }
+        return MessageDto.of(messageService.addMessage(id, message));
+    }
+
+    /**
+     * POST method for creating messages in many rooms in one transaction
+     * @param items - rooms and texts of new messages
+     * @return results in the order of items, with an error for every invalid item
+     */
+    @PostMapping("/batch")
+    public List<MessageBatchResult> createBatch(@RequestBody List<MessageBatchItem> items) {
+        return messageBatchService.createMessages(items);
     }
 
     /**
@@ -0,0 +1,63 @@
+package ru.job4j.chat.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import ru.job4j.chat.model.MessageDto;
+import ru.job4j.chat.service.EntityResolver;
+import ru.job4j.chat.service.ReactiveMessageService;
+
+/**
+ * Rest controller for non-blocking reads of room messages.
+ * Responses are streamed as NDJSON or Server-Sent Events, items are written as the client reads them.
+ * Items are written by the bounded writer pool of ReactiveStreamConfig, a client that stops reading
+ * holds one writer thread until its write times out; streams end after chat.reactive.timeout.
+ */
+@RestController
+@RequestMapping("/reactive/message")
+@RequiredArgsConstructor
+public class ReactiveMessageController {
+
+    /**
+     * Logic for non-blocking reads of messages
+     */
+    private final ReactiveMessageService reactiveMessageService;
+
+    /**
+     * Used for checking that the room exists before streaming
+     */
+    private final EntityResolver resolver;
+
+    /**
+     * GET method for streaming room history, oldest first
+     * @param id - room ID
+     * @param after - ID of the last message seen by client (whole history when absent)
+     * @return stream of messages
+     */
+    @GetMapping(value = "/room/{id}", produces = {
+            MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE
+    })
+    public Flux<MessageDto> history(
+            @PathVariable int id,
+            @RequestParam(required = false) Integer after) {
+        resolver.resolveRoom(id);
+        return reactiveMessageService.history(id, after);
+    }
+
+    /**
+     * GET method for tailing the room: history after the given message, then new messages
+     * @param id - room ID
+     * @param after - ID of the last message seen by client (whole history when absent)
+     * @return endless stream of messages
+     */
+    @GetMapping(value = "/room/{id}/tail", produces = {
+            MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE
+    })
+    public Flux<MessageDto> tail(
+            @PathVariable int id,
+            @RequestParam(required = false) Integer after) {
+        resolver.resolveRoom(id);
+        return reactiveMessageService.tail(id, after);
+    }
+}
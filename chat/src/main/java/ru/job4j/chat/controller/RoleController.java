@@ -1,10 +1,14 @@
 package ru.job4j.chat.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.job4j.chat.handlers.Operation;
 import ru.job4j.chat.model.Role;
+import ru.job4j.chat.service.ResourceVersionService;
 import ru.job4j.chat.service.RoleService;
 
 import javax.validation.Valid;
@@ -25,12 +29,24 @@ public class RoleController {
     private final RoleService roleService;
 
     /**
-     * GET method for finding all roles
+     * Version of the role catalog for ETags
+     */
+    private final ResourceVersionService versions;
+
+    /**
+     * GET method for finding all roles, answered with 304 when If-None-Match has the current ETag
+     * @param request - current request
      * @return List of role
      */
     @GetMapping("/")
-    public List<Role> findAll() {
-        return roleService.findAllRoles();
+    public ResponseEntity<List<Role>> findAll(WebRequest request) {
+        String etag = versions.etag(ResourceVersionService.ROLES, request);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(roleService.findAllRoles());
     }
 
     /**
@@ -1,10 +1,16 @@
 package ru.job4j.chat.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.job4j.chat.handlers.Operation;
 import ru.job4j.chat.model.Room;
+import ru.job4j.chat.model.RoomUnreadDto;
+import ru.job4j.chat.service.ReadCursorService;
+import ru.job4j.chat.service.ResourceVersionService;
 import ru.job4j.chat.service.RoomService;
 
 import javax.validation.Valid;
@@ -25,12 +31,49 @@ public class RoomController {
     private final RoomService roomService;
 
     /**
-     * GET method for getting all available Rooms
+     * Logic for read cursors and unread counters of rooms
+     */
+    private final ReadCursorService readCursorService;
+
+    /**
+     * Version of the room catalog for ETags
+     */
+    private final ResourceVersionService versions;
+
+    /**
+     * GET method for getting all available Rooms, answered with 304 when If-None-Match has the current ETag
+     * @param request - current request
      * @return List of rooms
      */
     @GetMapping("/")
-    public List<Room> findAll() {
-        return roomService.findAllRooms();
+    public ResponseEntity<List<Room>> findAll(WebRequest request) {
+        String etag = versions.etag(ResourceVersionService.ROOMS, request);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(roomService.findAllRooms());
+    }
+
+    /**
+     * GET method for getting all available Rooms with unread counters of the current user
+     * @return List of rooms
+     */
+    @GetMapping("/unread")
+    public List<RoomUnreadDto> findAllWithUnread() {
+        return readCursorService.findRoomsWithUnread();
+    }
+
+    /**
+     * PUT method for moving read cursor of the current user in the room
+     * @param id - room ID
+     * @param last - ID of the last read message
+     * @return Room with cursor and unread counter
+     */
+    @PutMapping("/{id}/read")
+    public RoomUnreadDto markRead(@PathVariable int id, @RequestParam int last) {
+        return readCursorService.markRead(id, last);
     }
 
     /**
@@ -57,16 +57,14 @@ public class UserController {
      * POST method for signing up new person
      * @param id - role ID
      * @param person - object of Person
-     * @param token - JWT token
      * @return signed up object of Person
      */
     @PostMapping("/sign-up/role/{id}")
     @Validated(Operation.OnCreate.class)
     public Person signUp(
             @PathVariable("id") int id,
-            @Valid @RequestBody Person person,
-            @RequestHeader("Authorization") String token) {
-        return userService.singUpPerson(id, person, token);
+            @Valid @RequestBody Person person) {
+        return userService.singUpPerson(id, person);
     }
 
     /**
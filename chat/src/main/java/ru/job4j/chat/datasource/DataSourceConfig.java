@@ -0,0 +1,101 @@
+package ru.job4j.chat.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import ru.job4j.chat.event.ClusterNode;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Configuration of connection pools of the primary database (spring.datasource.*)
+ * and read replicas (chat.datasource.replicas, comma separated JDBC URLs with the same credentials).
+ * Replica pools take all settings of the primary pool (spring.datasource.hikari.*), except URL and name.
+ * Without replicas every connection goes to the primary.
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class DataSourceConfig {
+
+    /**
+     * Connection property of the Postgres driver, read by the trigger of db/update_007.sql
+     */
+    public static final String APPLICATION_NAME = "ApplicationName";
+
+    /**
+     * Prefix of names of replica pools, the name is followed by the number of replica
+     */
+    private static final String REPLICA_POOL = "replica-";
+
+    /**
+     * Pool of connections to the primary database, configured by spring.datasource.hikari.*
+     * @param properties - properties of data source
+     * @param registry - registry of pool metrics
+     * @param node - this instance, its ID is the application_name of connections
+     * @return HikariDataSource object
+     */
+    @Bean(destroyMethod = "")
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties, MeterRegistry registry, ClusterNode node) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        dataSource.addDataSourceProperty(APPLICATION_NAME, node.getId());
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+        return dataSource;
+    }
+
+    /**
+     * Routing of connections between the primary and replicas, it closes all pools on shutdown
+     * @param primary - pool of the primary database, replicas copy its settings
+     * @param registry - registry of pool metrics
+     * @param urls - JDBC URLs of replicas
+     * @param readYourWrites - read-your-writes window in milliseconds, 0 switches it off
+     * @param maxLag - maximum replication lag of a healthy replica in seconds
+     * @return ReplicaRoutingDataSource object
+     */
+    @Bean
+    public ReplicaRoutingDataSource routingDataSource(
+            HikariDataSource primary,
+            MeterRegistry registry,
+            @Value("${chat.datasource.replicas:}") List<String> urls,
+            @Value("${chat.datasource.read-your-writes:5000}") long readYourWrites,
+            @Value("${chat.datasource.replica-max-lag:10}") double maxLag) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : urls) {
+            HikariDataSource replica = new HikariDataSource();
+            primary.copyStateTo(replica);
+            Properties dataSourceProperties = new Properties();
+            dataSourceProperties.putAll(primary.getDataSourceProperties());
+            replica.setDataSourceProperties(dataSourceProperties);
+            replica.setJdbcUrl(url.trim());
+            replica.setPoolName(REPLICA_POOL + (replicas.size() + 1));
+            replica.setReadOnly(true);
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            replicas.put(replica.getPoolName(), replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, readYourWrites, maxLag);
+    }
+
+    /**
+     * Data source of the application, takes connection of the routing data source on the first statement
+     * @param routing - routing data source
+     * @return DataSource object
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource routing) {
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
@@ -0,0 +1,285 @@
+package ru.job4j.chat.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import ru.job4j.chat.cache.BoundedCache;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routing of connections between the primary database and read replicas.
+ * Connections of read-only transactions go to a healthy replica (round robin),
+ * all other connections and reads of users who wrote within the read-your-writes window go to the primary.
+ * A writer is remembered by this instance and by cookie LAST_WRITE_COOKIE with the time of the write,
+ * so reads of the user on other instances of the cluster go to the primary too. Clients that do not keep
+ * cookies get read-your-writes only from the instance that took the write. The cookie is under client control,
+ * so a time of the last write in the future or a value that is not a number is ignored: a client can not keep
+ * its reads on the primary for longer than the window after the time it sends.
+ * Must be wrapped into LazyConnectionDataSourceProxy, so the connection is taken
+ * after the transaction is marked read-only.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    /**
+     * Lookup key of the primary database
+     */
+    public static final String PRIMARY = "primary";
+
+    /**
+     * Maximum number of users remembered within the read-your-writes window
+     */
+    private static final int WRITERS_SIZE = 10000;
+
+    /**
+     * Cookie with the time of the last write of the user in milliseconds.
+     * A client may only send its own reads to the primary within the window with it
+     */
+    public static final String LAST_WRITE_COOKIE = "chat-last-write";
+
+    /**
+     * Attribute of request that already has the cookie of the last write
+     */
+    private static final String COOKIE_SET = ReplicaRoutingDataSource.class.getName() + ".COOKIE_SET";
+
+    /**
+     * Replication lag in seconds, 0 when the database is not a standby or has replayed all received WAL
+     */
+    private static final String LAG = "select case when not pg_is_in_recovery() "
+            + "or pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 "
+            + "else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end";
+
+    /**
+     * Timeout of the health check query in seconds
+     */
+    private static final int CHECK_TIMEOUT = 2;
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Read-your-writes window in milliseconds, 0 when switched off
+     */
+    private final long readYourWrites;
+
+    /**
+     * Maximum replication lag of a healthy replica in seconds
+     */
+    private final double maxLag;
+
+    /**
+     * Usernames of users who wrote within the read-your-writes window
+     */
+    private final BoundedCache<String, Boolean> writers = new BoundedCache<>(WRITERS_SIZE);
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    long readYourWrites, double maxLag) {
+        this.primary = primary;
+        this.readYourWrites = readYourWrites;
+        this.maxLag = maxLag;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+    }
+
+    /**
+     * Method for registering the primary and replicas as targets of routing
+     */
+    @Override
+    public void afterPropertiesSet() {
+        Map<Object, Object> targets = new HashMap<>();
+        replicas.forEach(replica -> targets.put(replica.name, replica.dataSource));
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        super.afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                rememberWriter();
+            }
+            return PRIMARY;
+        }
+        if (isRecentWriter()) {
+            return PRIMARY;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica.name;
+            }
+        }
+        return PRIMARY;
+    }
+
+    /**
+     * Method for checking replicas, a replica is used only when it answers and its lag is within maxLag
+     */
+    @Scheduled(fixedDelayString = "${chat.datasource.replica-check-interval:5000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(CHECK_TIMEOUT);
+                try (ResultSet rs = statement.executeQuery(LAG)) {
+                    healthy = rs.next() && rs.getDouble(1) <= maxLag;
+                }
+            } catch (SQLException e) {
+                log.debug("Replica {} is not available", replica.name, e);
+                healthy = false;
+            }
+            if (healthy != replica.healthy) {
+                log.warn("Replica {} is {}", replica.name, healthy ? "healthy" : "unhealthy, reads fail over to primary");
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    /**
+     * Method for checking whether the replica receives reads
+     * @param name - name of replica
+     * @return true if the replica is healthy
+     */
+    public boolean isHealthy(String name) {
+        return replicas.stream().anyMatch(replica -> replica.name.equals(name) && replica.healthy);
+    }
+
+    /**
+     * Method for closing connection pools of primary and replicas
+     * @throws IOException if a pool was not closed
+     */
+    @Override
+    public void destroy() throws IOException {
+        for (Replica replica : replicas) {
+            close(replica.dataSource);
+        }
+        close(primary);
+    }
+
+    /**
+     * Method for remembering the current user as writer, called for every write transaction
+     * and by writes that run outside of the request thread (write-behind)
+     */
+    public void rememberWriter() {
+        String username = currentUsername();
+        if (readYourWrites <= 0 || username == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        writers.put(username, Boolean.TRUE, now + readYourWrites);
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+            if (response != null && !response.isCommitted()
+                    && attributes.getAttribute(COOKIE_SET, RequestAttributes.SCOPE_REQUEST) == null) {
+                Cookie cookie = new Cookie(LAST_WRITE_COOKIE, String.valueOf(now));
+                cookie.setPath("/");
+                cookie.setHttpOnly(true);
+                cookie.setMaxAge((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(readYourWrites + 999)));
+                response.addCookie(cookie);
+                attributes.setAttribute(COOKIE_SET, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+            }
+        }
+    }
+
+    /**
+     * Private method for checking whether the current user wrote within the read-your-writes window,
+     * on this instance or on another one (cookie of the last write)
+     * @return true if reads of the user must go to the primary
+     */
+    private boolean isRecentWriter() {
+        if (readYourWrites <= 0) {
+            return false;
+        }
+        String username = currentUsername();
+        if (username != null && writers.get(username).isPresent()) {
+            return true;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return false;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        if (request.getCookies() == null) {
+            return false;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                try {
+                    long elapsed = System.currentTimeMillis() - Long.parseLong(cookie.getValue());
+                    return elapsed >= 0 && elapsed < readYourWrites;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Private method for getting username of the current request
+     * @return username or null outside of authenticated requests
+     */
+    private static String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? null : authentication.getName();
+    }
+
+    /**
+     * Private method for closing connection pool
+     * @param dataSource - pool
+     * @throws IOException if the pool was not closed
+     */
+    private static void close(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    /**
+     * Replica with its health, updated by checkReplicas()
+     */
+    private static final class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        private volatile boolean healthy;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
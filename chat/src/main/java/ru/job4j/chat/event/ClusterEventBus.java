@@ -0,0 +1,336 @@
+package ru.job4j.chat.event;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import ru.job4j.chat.cache.BoundedCache;
+import ru.job4j.chat.datasource.DataSourceConfig;
+import ru.job4j.chat.model.MessageDto;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out of new messages between chat instances through Postgres LISTEN/NOTIFY.
+ * The trigger of db/update_007.sql notifies channel chat_messages on every insert,
+ * a dedicated connection listens to it, and messages of other instances are published
+ * here as MessageCreatedEvent, so local SSE, STOMP and reactive subscribers get them.
+ * When the connection drops, the listener reconnects with backoff and resyncs
+ * messages created since the last one it has seen.
+ * Changes of resource versions (db/update_009.sql) are published as ResourceVersionEvent,
+ * archived messages of rooms (db/update_011.sql) as MessagesArchivedEvent,
+ * and every connect of the listener is published as ClusterResyncEvent.
+ * Events of other instances are published in order by a separate publisher thread, so slow local listeners
+ * do not delay receiving notifications. When chat.cluster.publish-queue-capacity events wait,
+ * the listener waits for the publisher.
+ */
+@Component
+@Slf4j
+public class ClusterEventBus implements SmartLifecycle {
+
+    /**
+     * Channel of notifications, see db/update_007.sql
+     */
+    public static final String CHANNEL = "chat_messages";
+
+    /**
+     * Channel of changed resource versions, see db/update_009.sql
+     */
+    public static final String VERSIONS_CHANNEL = "chat_versions";
+
+    /**
+     * Channel of archived messages, payload is room ID and number of messages, see db/update_011.sql
+     */
+    public static final String ARCHIVED_CHANNEL = "chat_archived";
+
+    /**
+     * How long the listener waits for notifications before it checks the connection
+     */
+    private static final int POLL_TIMEOUT_MS = 10_000;
+
+    /**
+     * Maximum delay between reconnect attempts
+     */
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    /**
+     * Messages created by clocks of other instances may be a bit older than the last seen message
+     */
+    private static final long RESYNC_MARGIN_MS = 5_000;
+
+    /**
+     * Maximum number of messages published by one resync
+     */
+    private static final int RESYNC_LIMIT = 1000;
+
+    private final DataSourceProperties properties;
+
+    private final MessageRepository messageRepository;
+
+    private final ApplicationEventPublisher publisher;
+
+    private final ClusterNode node;
+
+    /**
+     * Maximum number of events waiting for the publisher thread
+     */
+    private final int publishQueueCapacity;
+
+    /**
+     * Single thread publishing events of other instances in the order of notifications
+     */
+    private ThreadPoolExecutor remotePublisher;
+
+    /**
+     * IDs of messages already published on this instance
+     */
+    private final BoundedCache<Integer, Boolean> seen;
+
+    /**
+     * Creation time of the newest published message, the resync starts from it
+     */
+    private volatile long lastCreated;
+
+    private volatile boolean running;
+
+    /**
+     * True while the listener is connected and no notification can be missed
+     */
+    private volatile boolean listening;
+
+    private Thread listener;
+
+    public ClusterEventBus(DataSourceProperties properties,
+                           MessageRepository messageRepository,
+                           ApplicationEventPublisher publisher,
+                           ClusterNode node,
+                           @Value("${chat.cluster.seen-size:10000}") int seenSize,
+                           @Value("${chat.cluster.publish-queue-capacity:10000}") int publishQueueCapacity) {
+        this.properties = properties;
+        this.messageRepository = messageRepository;
+        this.publisher = publisher;
+        this.node = node;
+        this.seen = new BoundedCache<>(seenSize);
+        this.publishQueueCapacity = publishQueueCapacity;
+    }
+
+    /**
+     * Method for remembering published message, so its notification and resync do not publish it again
+     * @param event - event of created message
+     */
+    @EventListener
+    public void onMessageCreated(MessageCreatedEvent event) {
+        MessageDto message = event.getMessage();
+        seen.put(message.getId(), Boolean.TRUE);
+        if (message.getCreated() != null && message.getCreated().getTime() > lastCreated) {
+            lastCreated = message.getCreated().getTime();
+        }
+    }
+
+    @Override
+    public void start() {
+        lastCreated = System.currentTimeMillis();
+        remotePublisher = new ThreadPoolExecutor(
+                1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(publishQueueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "cluster-event-publisher");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Publisher of cluster events is stopped");
+                    }
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                }
+        );
+        running = true;
+        listener = new Thread(this::listen, "cluster-event-bus");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        listening = false;
+        listener.interrupt();
+        remotePublisher.shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Method for checking whether notifications of other instances are received
+     * @return true while the listener is connected
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    /**
+     * Private method of the listener thread: connects, resyncs and dispatches notifications until stopped
+     */
+    private void listen() {
+        long backoff = 0;
+        boolean connected = false;
+        while (running) {
+            try (Connection connection = connect()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                    statement.execute("LISTEN " + VERSIONS_CHANNEL);
+                    statement.execute("LISTEN " + ARCHIVED_CHANNEL);
+                }
+                publisher.publishEvent(new ClusterResyncEvent());
+                listening = true;
+                if (connected) {
+                    resync();
+                }
+                connected = true;
+                backoff = 0;
+                log.info("Listening to notifications of new messages");
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+                    if (notifications == null || notifications.length == 0) {
+                        try (Statement statement = connection.createStatement()) {
+                            statement.execute("select 1");
+                        }
+                    } else {
+                        dispatch(notifications);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                listening = false;
+                if (!running) {
+                    return;
+                }
+                backoff = Math.min(MAX_BACKOFF_MS, Math.max(1000, backoff * 2));
+                log.warn("Listener of new messages is disconnected, reconnect in {} ms", backoff, e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Private method for publishing messages, resource versions and archived messages of notifications
+     * @param notifications - received notifications
+     */
+    private void dispatch(PGNotification[] notifications) {
+        List<Integer> ids = new ArrayList<>();
+        for (PGNotification notification : notifications) {
+            if (VERSIONS_CHANNEL.equals(notification.getName())) {
+                int separator = notification.getParameter().lastIndexOf(',');
+                publishRemote(new ResourceVersionEvent(
+                        notification.getParameter().substring(0, separator),
+                        Long.parseLong(notification.getParameter().substring(separator + 1))
+                ));
+                continue;
+            }
+            if (ARCHIVED_CHANNEL.equals(notification.getName())) {
+                String[] payload = notification.getParameter().split(",");
+                publishRemote(new MessagesArchivedEvent(Integer.parseInt(payload[0]), Integer.parseInt(payload[1])));
+                continue;
+            }
+            String[] payload = notification.getParameter().split(",", 3);
+            int id = Integer.parseInt(payload[0]);
+            if (payload.length == 3 && node.getId().equals(payload[2])) {
+                continue;
+            }
+            if (seen.get(id).isEmpty()) {
+                ids.add(id);
+            }
+        }
+        if (!ids.isEmpty()) {
+            publish(messageRepository.findDtosByIds(ids));
+        }
+    }
+
+    /**
+     * Private method for publishing messages created while the listener was disconnected
+     */
+    private void resync() {
+        Timestamp from = new Timestamp(lastCreated - RESYNC_MARGIN_MS);
+        List<MessageDto> messages = messageRepository.findCreatedSince(from, PageRequest.of(0, RESYNC_LIMIT));
+        if (messages.size() == RESYNC_LIMIT) {
+            log.warn("Resync after reconnect is limited to {} messages, clients catch up by their last message ID", RESYNC_LIMIT);
+        }
+        publish(messages);
+    }
+
+    /**
+     * Private method for publishing messages which are not published yet.
+     * They are marked as seen at once, so a resync does not queue them again.
+     * @param messages - messages, oldest first
+     */
+    private void publish(List<MessageDto> messages) {
+        for (MessageDto message : messages) {
+            if (seen.get(message.getId()).isEmpty()) {
+                seen.put(message.getId(), Boolean.TRUE);
+                publishRemote(new MessageCreatedEvent(message));
+            }
+        }
+    }
+
+    /**
+     * Private method for publishing event of another instance on the publisher thread
+     * @param event - event
+     */
+    private void publishRemote(Object event) {
+        remotePublisher.execute(() -> {
+            try {
+                publisher.publishEvent(event);
+            } catch (RuntimeException e) {
+                log.error("Listener of cluster event failed: {}", event, e);
+            }
+        });
+    }
+
+    /**
+     * Private method for opening dedicated connection to the primary database, outside of the pool
+     * @return Connection object
+     * @throws SQLException if the database is not available
+     */
+    private Connection connect() throws SQLException {
+        Properties info = new Properties();
+        if (properties.determineUsername() != null) {
+            info.setProperty("user", properties.determineUsername());
+        }
+        if (properties.determinePassword() != null) {
+            info.setProperty("password", properties.determinePassword());
+        }
+        info.setProperty(DataSourceConfig.APPLICATION_NAME, node.getId() + "-listener");
+        return DriverManager.getConnection(properties.determineUrl(), info);
+    }
+}
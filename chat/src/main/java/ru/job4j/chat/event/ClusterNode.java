@@ -0,0 +1,28 @@
+package ru.job4j.chat.event;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Identity of this chat instance in the cluster (chat.cluster.node-id, random when not set).
+ * It is the application_name of JDBC connections, so notifications about own inserts are recognized.
+ */
+@Component
+public class ClusterNode {
+
+    private final String id;
+
+    public ClusterNode(@Value("${chat.cluster.node-id:}") String id) {
+        this.id = id.isBlank() ? "chat-" + UUID.randomUUID() : id;
+    }
+
+    /**
+     * Method for getting node ID
+     * @return node ID
+     */
+    public String getId() {
+        return id;
+    }
+}
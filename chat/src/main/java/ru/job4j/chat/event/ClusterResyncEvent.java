@@ -0,0 +1,8 @@
+package ru.job4j.chat.event;
+
+/**
+ * Application event, published when the listener of notifications is connected.
+ * Notifications sent while it was disconnected are lost, state built from them has to be reloaded.
+ */
+public class ClusterResyncEvent {
+}
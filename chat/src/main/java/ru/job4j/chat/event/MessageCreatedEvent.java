@@ -0,0 +1,26 @@
+package ru.job4j.chat.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import ru.job4j.chat.model.MessageDto;
+
+/**
+ * Application event, published after a new message is saved
+ */
+@Getter
+@RequiredArgsConstructor
+public class MessageCreatedEvent {
+
+    /**
+     * Saved message
+     */
+    private final MessageDto message;
+
+    /**
+     * Method for getting room ID of the message
+     * @return room ID
+     */
+    public int getRoomId() {
+        return message.getRoomId();
+    }
+}
@@ -0,0 +1,20 @@
+package ru.job4j.chat.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Application event, published on every instance when messages of a room are archived
+ * with a detached partition (MessagePartitionMaintainer)
+ */
+@Getter
+@RequiredArgsConstructor
+public class MessagesArchivedEvent {
+
+    private final int roomId;
+
+    /**
+     * Number of archived messages of the room
+     */
+    private final int count;
+}
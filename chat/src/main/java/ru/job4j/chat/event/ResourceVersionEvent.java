@@ -0,0 +1,22 @@
+package ru.job4j.chat.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Application event, published when another instance bumps version of resource
+ */
+@Getter
+@RequiredArgsConstructor
+public class ResourceVersionEvent {
+
+    /**
+     * Name of resource, see ResourceVersionService
+     */
+    private final String resource;
+
+    /**
+     * New version of resource
+     */
+    private final long version;
+}
@@ -0,0 +1,47 @@
+package ru.job4j.chat.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of requests being processed by request threads, as gauge http.server.requests.active.
+ * Counts in both modes of execution: Tomcat reports busy threads of its own pool only,
+ * not requests on virtual threads. Asynchronous requests are counted until their request thread returns.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ActiveRequestsFilter extends OncePerRequestFilter {
+
+    public static final String GAUGE = "http.server.requests.active";
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    public ActiveRequestsFilter(MeterRegistry registry) {
+        Gauge.builder(GAUGE, active, AtomicInteger::get)
+                .description("Requests being processed by request threads")
+                .register(registry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req,
+                                    HttpServletResponse resp,
+                                    FilterChain chain) throws ServletException, IOException {
+        active.incrementAndGet();
+        try {
+            chain.doFilter(req, resp);
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+}
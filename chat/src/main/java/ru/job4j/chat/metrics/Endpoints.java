@@ -0,0 +1,46 @@
+package ru.job4j.chat.metrics;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Value of the "endpoint" tag of metrics: HTTP method and mapped path pattern of the current request
+ */
+public final class Endpoints {
+
+    public static final String TAG = "endpoint";
+
+    /**
+     * Value for work outside of a mapped request (scheduled jobs, writer threads)
+     */
+    public static final String NONE = "none";
+
+    private Endpoints() {
+    }
+
+    /**
+     * Method for getting endpoint of the current request
+     * @return endpoint, for example "GET /message/room/{id}"
+     */
+    public static String current() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return NONE;
+        }
+        return of(((ServletRequestAttributes) attributes).getRequest());
+    }
+
+    /**
+     * Method for getting endpoint of the request
+     * @param request - HTTP request
+     * @return endpoint, for example "GET /message/room/{id}"
+     */
+    public static String of(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern == null ? NONE : request.getMethod() + " " + pattern;
+    }
+}
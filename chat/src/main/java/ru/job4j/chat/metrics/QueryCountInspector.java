@@ -0,0 +1,33 @@
+package ru.job4j.chat.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counter of SQL statements prepared by Hibernate on the current thread.
+ * Registered with hibernate.session_factory.statement_inspector, Hibernate creates its instance.
+ */
+public class QueryCountInspector implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * Method for resetting counter of the current thread
+     */
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    /**
+     * Method for getting number of statements since the last reset on the current thread
+     * @return number of statements
+     */
+    public static int count() {
+        return COUNT.get()[0];
+    }
+}
@@ -0,0 +1,37 @@
+package ru.job4j.chat.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records number of SQL statements per request, tagged by endpoint
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryCountInterceptor implements HandlerInterceptor {
+
+    public static final String SUMMARY = "chat.hibernate.queries";
+
+    private final MeterRegistry registry;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        QueryCountInspector.reset();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        DistributionSummary.builder(SUMMARY)
+                .description("SQL statements per request")
+                .tag(Endpoints.TAG, Endpoints.of(request))
+                .register(registry)
+                .record(QueryCountInspector.count());
+    }
+}
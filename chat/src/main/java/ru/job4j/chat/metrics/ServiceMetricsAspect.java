@@ -0,0 +1,47 @@
+package ru.job4j.chat.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timers and error counters of public methods of services, tagged by endpoint
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class ServiceMetricsAspect {
+
+    public static final String TIMER = "chat.service";
+
+    public static final String ERRORS = "chat.service.errors";
+
+    private final MeterRegistry registry;
+
+    @Around("execution(public * ru.job4j.chat.service.*Service.*(..))")
+    public Object measure(ProceedingJoinPoint point) throws Throwable {
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        try {
+            return point.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            Tags tags = Tags.of(
+                    "class", point.getSignature().getDeclaringType().getSimpleName(),
+                    "method", point.getSignature().getName(),
+                    Endpoints.TAG, Endpoints.current()
+            );
+            sample.stop(registry.timer(TIMER, tags.and("exception", exception)));
+            if (!"none".equals(exception)) {
+                registry.counter(ERRORS, tags.and("exception", exception)).increment();
+            }
+        }
+    }
+}
@@ -19,8 +19,19 @@ import java.util.Objects;
 @Setter
 public class Message {
 
+    /**
+     * Number of IDs reserved by one call of the sequence, must match its increment (db/update_003.sql)
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * Name of the sequence of message IDs
+     */
+    public static final String ID_SEQUENCE = "messages_id_seq";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     @NotNull(message = "Id must by non null", groups = {
             Operation.OnUpdate.class, Operation.OnDelete.class
     })
@@ -31,13 +42,17 @@ public class Message {
     })
     private String text;
 
+    /**
+     * Partition key of messages (db/update_006.sql), part of the primary key in the database
+     */
+    @Column(nullable = false)
     private Timestamp created;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "room_id")
     private Room room;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "person_id")
     private Person person;
 
@@ -0,0 +1,16 @@
+package ru.job4j.chat.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Item of batch creation of messages
+ */
+@Getter
+@Setter
+public class MessageBatchItem {
+
+    private int roomId;
+
+    private String text;
+}
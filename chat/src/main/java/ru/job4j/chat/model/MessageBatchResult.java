@@ -0,0 +1,39 @@
+package ru.job4j.chat.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Getter;
+
+/**
+ * Result of one item of batch request: the message or the error of the item.
+ * Results are returned in the order of items of the request.
+ */
+@Getter
+public class MessageBatchResult {
+
+    private final MessageDto message;
+
+    private final JsonNode error;
+
+    private MessageBatchResult(MessageDto message, JsonNode error) {
+        this.message = message;
+        this.error = error;
+    }
+
+    /**
+     * Method for building successful result
+     * @param message - message of the item
+     * @return MessageBatchResult object
+     */
+    public static MessageBatchResult of(MessageDto message) {
+        return new MessageBatchResult(message, null);
+    }
+
+    /**
+     * Method for building failed result, the error has the same fields as errors of single requests
+     * @param error - error of the item
+     * @return MessageBatchResult object
+     */
+    public static MessageBatchResult failed(ErrorMessages error) {
+        return new MessageBatchResult(null, error.getError().get("error"));
+    }
+}
@@ -0,0 +1,52 @@
+package ru.job4j.chat.model;
+
+import lombok.Getter;
+
+import java.sql.Timestamp;
+
+/**
+ * DTO class of message for read endpoints.
+ * Built by one SQL query with the room and the author, without loading entities.
+ */
+@Getter
+public class MessageDto {
+
+    private final int id;
+
+    private final String text;
+
+    private final Timestamp created;
+
+    private final int roomId;
+
+    private final String roomName;
+
+    private final int personId;
+
+    private final String username;
+
+    public MessageDto(int id, String text, Timestamp created,
+                      int roomId, String roomName,
+                      int personId, String username) {
+        this.id = id;
+        this.text = text;
+        this.created = created;
+        this.roomId = roomId;
+        this.roomName = roomName;
+        this.personId = personId;
+        this.username = username;
+    }
+
+    /**
+     * Method for building DTO of loaded message
+     * @param message - object of Message with room and person
+     * @return MessageDto object
+     */
+    public static MessageDto of(Message message) {
+        return new MessageDto(
+                message.getId(), message.getText(), message.getCreated(),
+                message.getRoom().getId(), message.getRoom().getName(),
+                message.getPerson().getId(), message.getPerson().getUsername()
+        );
+    }
+}
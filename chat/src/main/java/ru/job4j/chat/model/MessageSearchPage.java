@@ -0,0 +1,22 @@
+package ru.job4j.chat.model;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Page of full-text search results, best match first.
+ * The cursor is passed back to get the next page and is null on the last page.
+ */
+@Getter
+public class MessageSearchPage {
+
+    private final List<MessageDto> items;
+
+    private final String next;
+
+    public MessageSearchPage(List<MessageDto> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+}
@@ -2,6 +2,8 @@ package ru.job4j.chat.model;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import ru.job4j.chat.handlers.Operation;
 
 import javax.persistence.*;
@@ -11,13 +13,18 @@ import javax.validation.constraints.Null;
 import java.util.Objects;
 
 /**
- * Model of role
+ * Model of role, kept in the second-level cache (region "roles")
  */
 @Entity
 @Table(name = "roles")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Role.CACHE_REGION)
 @Getter
 @Setter
 public class Role {
+
+    public static final String CACHE_REGION = "roles";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @NotNull(message = "Id must by non null", groups = {
@@ -2,6 +2,8 @@ package ru.job4j.chat.model;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import ru.job4j.chat.handlers.Operation;
 
 import javax.persistence.*;
@@ -10,13 +12,18 @@ import javax.validation.constraints.NotNull;
 import java.util.Objects;
 
 /**
- * Model of room
+ * Model of room, kept in the second-level cache (region "rooms")
  */
 @Entity
 @Table(name = "rooms")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Room.CACHE_REGION)
 @Getter
 @Setter
 public class Room {
+
+    public static final String CACHE_REGION = "rooms";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @NotNull(message = "Id must be non null", groups = {
@@ -0,0 +1,28 @@
+package ru.job4j.chat.model;
+
+import lombok.Getter;
+
+/**
+ * DTO class of room with read cursor and number of unread messages of the current user
+ */
+@Getter
+public class RoomUnreadDto {
+
+    private final int id;
+
+    private final String name;
+
+    /**
+     * ID of the last read message, 0 when the room was never read
+     */
+    private final int lastReadId;
+
+    private final int unread;
+
+    public RoomUnreadDto(int id, String name, int lastReadId, int unread) {
+        this.id = id;
+        this.name = name;
+        this.lastReadId = lastReadId;
+        this.unread = unread;
+    }
+}
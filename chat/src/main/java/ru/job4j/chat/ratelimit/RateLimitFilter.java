@@ -0,0 +1,55 @@
+package ru.job4j.chat.ratelimit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filter of the security chain, placed after JWTAuthorizationFilter.
+ * Requests of authenticated users over their rate limit are answered with 429 and Retry-After in seconds.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter limiter;
+
+    public RateLimitFilter(RateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req,
+                                    HttpServletResponse resp,
+                                    FilterChain chain) throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        String path = req.getRequestURI().substring(req.getContextPath().length());
+        long wait = limiter.acquire(authentication.getName(), req.getMethod(), path);
+        if (wait > 0) {
+            long seconds = retryAfterSeconds(wait);
+            resp.setHeader("Retry-After", String.valueOf(seconds));
+            resp.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many requests. Retry after " + seconds + " s");
+            return;
+        }
+        chain.doFilter(req, resp);
+    }
+
+    /**
+     * Method for getting value of Retry-After header
+     * @param wait - nanoseconds until a token is available
+     * @return whole seconds rounded up, at least 1
+     */
+    public static long retryAfterSeconds(long wait) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+}
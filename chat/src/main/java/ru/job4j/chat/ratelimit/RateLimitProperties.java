@@ -0,0 +1,60 @@
+package ru.job4j.chat.ratelimit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rules of per-user rate limits (chat.rate-limit.*).
+ * Rules are checked in order, the first rule matching method, path and role of the request applies.
+ * Requests without a matching rule are not limited.
+ */
+@Getter
+@Setter
+@ConfigurationProperties("chat.rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Period of eviction of idle buckets in milliseconds
+     */
+    private long evictInterval = 60_000;
+
+    private List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Limit of one endpoint: a bucket of capacity requests refilled with perSecond requests per second
+     */
+    @Getter
+    @Setter
+    public static class Rule {
+
+        /**
+         * Name of the rule, tag of metrics
+         */
+        private String name;
+
+        /**
+         * HTTP method, any method when not set
+         */
+        private String method;
+
+        /**
+         * Ant-style pattern of path, for example /message/room/*
+         */
+        private String path = "/**";
+
+        /**
+         * Name of role of the user, any role when not set
+         */
+        private String role;
+
+        private int capacity;
+
+        private double perSecond;
+    }
+}
@@ -0,0 +1,201 @@
+package ru.job4j.chat.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import ru.job4j.chat.service.EntityResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-user token buckets of the rules of RateLimitProperties.
+ * A bucket is kept as one AtomicLong with the time when it is full again (generic cell rate algorithm),
+ * so taking a token is one compare-and-set without locks. Full buckets are idle and are evicted periodically.
+ */
+@Component
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimiter {
+
+    /**
+     * Name of counter of rejected requests, tagged by rule
+     */
+    public static final String REJECTED = "chat.rate-limit.rejected";
+
+    private static final AntPathMatcher MATCHER = new AntPathMatcher();
+
+    private final boolean enabled;
+
+    private final List<CompiledRule> rules = new ArrayList<>();
+
+    /**
+     * Role name by username, only called when a rule depends on role
+     */
+    private final Function<String, String> roles;
+
+    /**
+     * Current time in nanoseconds
+     */
+    private final LongSupplier clock;
+
+    @Autowired
+    public RateLimiter(RateLimitProperties properties, MeterRegistry registry, EntityResolver resolver) {
+        this(properties, registry, username -> resolver.resolvePerson(username).getRole().getName());
+    }
+
+    public RateLimiter(RateLimitProperties properties, MeterRegistry registry, Function<String, String> roles) {
+        this(properties, registry, roles, System::nanoTime);
+    }
+
+    RateLimiter(RateLimitProperties properties, MeterRegistry registry, Function<String, String> roles,
+                LongSupplier clock) {
+        this.enabled = properties.isEnabled();
+        this.roles = roles;
+        this.clock = clock;
+        for (RateLimitProperties.Rule rule : properties.getRules()) {
+            if (rule.getCapacity() < 1 || rule.getPerSecond() <= 0) {
+                String anchor = UUID.randomUUID().toString();
+                throw new IllegalArgumentException("Invalid rate limit. Actual parameters: rule - " + rule.getName() + ", capacity - " + rule.getCapacity() + ", perSecond - " + rule.getPerSecond() + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+            }
+            rules.add(new CompiledRule(rule, registry.counter(REJECTED, "rule", String.valueOf(rule.getName()))));
+        }
+    }
+
+    /**
+     * Method for taking a token for the request of the user
+     * @param username - JWT subject
+     * @param method - HTTP method
+     * @param path - path of request within the application
+     * @return 0 when the request is allowed, otherwise nanoseconds until a token is available
+     */
+    public long acquire(String username, String method, String path) {
+        if (!enabled) {
+            return 0;
+        }
+        String role = null;
+        boolean roleResolved = false;
+        for (CompiledRule rule : rules) {
+            if ((rule.method != null && !rule.method.equalsIgnoreCase(method))
+                    || !MATCHER.match(rule.path, path)) {
+                continue;
+            }
+            if (rule.role != null) {
+                if (!roleResolved) {
+                    role = roleOf(username);
+                    roleResolved = true;
+                }
+                if (!rule.role.equals(role)) {
+                    continue;
+                }
+            }
+            return rule.acquire(username, clock.getAsLong());
+        }
+        return 0;
+    }
+
+    /**
+     * Method for removing full buckets, a removed bucket is created full on the next request
+     */
+    @Scheduled(fixedDelayString = "${chat.rate-limit.evict-interval:60000}")
+    public void evictIdle() {
+        long now = clock.getAsLong();
+        for (CompiledRule rule : rules) {
+            rule.buckets.values().removeIf(fullAt -> fullAt.get() - now <= 0);
+        }
+    }
+
+    /**
+     * Method for getting number of buckets kept by all rules
+     * @return number of buckets
+     */
+    int buckets() {
+        return rules.stream().mapToInt(rule -> rule.buckets.size()).sum();
+    }
+
+    /**
+     * Private method for getting role of the user
+     * @param username - username
+     * @return name of role or null when the user is not found
+     */
+    private String roleOf(String username) {
+        try {
+            return roles.apply(username);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compiled rule with buckets of its users
+     */
+    private static final class CompiledRule {
+
+        private final String method;
+
+        private final String path;
+
+        private final String role;
+
+        /**
+         * Time of refill of one token in nanoseconds
+         */
+        private final long interval;
+
+        /**
+         * Time of refill of the whole bucket in nanoseconds
+         */
+        private final long capacity;
+
+        private final Counter rejected;
+
+        /**
+         * Time when the bucket of user is full again, by username
+         */
+        private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+        private CompiledRule(RateLimitProperties.Rule rule, Counter rejected) {
+            this.method = rule.getMethod();
+            this.path = rule.getPath();
+            this.role = rule.getRole();
+            this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rule.getPerSecond()));
+            this.capacity = interval * rule.getCapacity();
+            this.rejected = rejected;
+        }
+
+        /**
+         * Private method for taking a token from the bucket of user
+         * @param username - username
+         * @param now - current time in nanoseconds
+         * @return 0 when a token is taken, otherwise nanoseconds until a token is available
+         */
+        private long acquire(String username, long now) {
+            AtomicLong fullAt = buckets.get(username);
+            if (fullAt == null) {
+                fullAt = buckets.computeIfAbsent(username, key -> new AtomicLong(now));
+            }
+            while (true) {
+                long current = fullAt.get();
+                long next = (current - now > 0 ? current : now) + interval;
+                long wait = next - capacity - now;
+                if (wait > 0) {
+                    rejected.increment();
+                    return wait;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+}
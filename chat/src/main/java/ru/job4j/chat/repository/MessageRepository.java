@@ -1,25 +1,205 @@
 package ru.job4j.chat.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.MessageDto;
 
-import java.util.Arrays;
+import javax.persistence.QueryHint;
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 /**
- * DAO interface for Messages
+ * DAO interface for Messages.
+ * Read queries return MessageDto projections built in one SQL query with the room and the author.
  */
 public interface MessageRepository extends CrudRepository<Message, Integer> {
 
+    /**
+     * Number of rows fetched from the server-side cursor at once by streaming queries
+     */
+    int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Select clause of MessageDto projections, used with FROM_DTO
+     */
+    String SELECT_DTO = "SELECT new ru.job4j.chat.model.MessageDto("
+            + "m.id, m.text, m.created, r.id, r.name, p.id, p.username) ";
+
+    String FROM_DTO = "FROM Message m JOIN m.room r JOIN m.person p ";
+
+    /**
+     * Getting message by message ID
+     * @param id - message ID
+     * @return MessageDto (wrapped to optional)
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE m.id = :id")
+    Optional<MessageDto> findDtoById(@Param("id") int id);
+
     /**
      * Getting all messages by user ID
      * @param id - user ID (int)
      * @return List of Messages
      */
-    @Query("SELECT m FROM Message m "
-            + "JOIN FETCH m.person p "
+    @Query(SELECT_DTO + FROM_DTO
             + "WHERE p.id = :id")
-    List<Message> findAllMessagesByUserId(@Param("id") int id);
+    List<MessageDto> findAllMessagesByUserId(@Param("id") int id);
+
+    /**
+     * Getting first page of all messages, newest first
+     * @param pageable - size of page
+     * @return List of Messages
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "ORDER BY m.id DESC")
+    List<MessageDto> findPage(Pageable pageable);
+
+    /**
+     * Getting page of all messages older than the given message ID, newest first
+     * @param id - message ID, exclusive
+     * @param pageable - size of page
+     * @return List of Messages
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE m.id < :id "
+            + "ORDER BY m.id DESC")
+    List<MessageDto> findPageBefore(@Param("id") int id, Pageable pageable);
+
+    /**
+     * Getting first page of room history, newest first.
+     * Served by index messages_room_created_id_idx (db/update_002.sql)
+     * @param roomId - room ID
+     * @param pageable - size of page
+     * @return List of Messages
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE r.id = :roomId "
+            + "ORDER BY m.created DESC, m.id DESC")
+    List<MessageDto> findRoomPage(@Param("roomId") int roomId, Pageable pageable);
+
+    /**
+     * Getting page of room history that follows the given (created, id) key, newest first.
+     * Served by index messages_room_created_id_idx (db/update_002.sql)
+     * @param roomId - room ID
+     * @param created - creation time of the last message of previous page
+     * @param id - ID of the last message of previous page
+     * @param pageable - size of page
+     * @return List of Messages
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE r.id = :roomId "
+            + "AND (m.created, m.id) < (:created, :id) "
+            + "ORDER BY m.created DESC, m.id DESC")
+    List<MessageDto> findRoomPageBefore(@Param("roomId") int roomId,
+                                        @Param("created") Timestamp created,
+                                        @Param("id") int id,
+                                        Pageable pageable);
+
+    /**
+     * Getting page of room history that starts at the given (created, id) key inclusive, newest first.
+     * Served by index messages_room_created_id_idx (db/update_002.sql)
+     * @param roomId - room ID
+     * @param created - creation time of the first message of the page
+     * @param id - ID of the first message of the page
+     * @param pageable - size of page
+     * @return List of Messages
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE r.id = :roomId "
+            + "AND (m.created, m.id) <= (:created, :id) "
+            + "ORDER BY m.created DESC, m.id DESC")
+    List<MessageDto> findRoomPageFrom(@Param("roomId") int roomId,
+                                      @Param("created") Timestamp created,
+                                      @Param("id") int id,
+                                      Pageable pageable);
+
+    /**
+     * Getting message of the room with the greatest ID below the given one,
+     * used as cursor of history when the message of the cursor is deleted or archived
+     * @param roomId - room ID
+     * @param id - message ID, exclusive
+     * @param pageable - first result only
+     * @return List of Messages, empty when the room has no older message
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE r.id = :roomId "
+            + "AND m.id < :id "
+            + "ORDER BY m.id DESC")
+    List<MessageDto> findRoomNearestBefore(@Param("roomId") int roomId, @Param("id") int id, Pageable pageable);
+
+    /**
+     * Getting page of room history that follows the given (created, id) key, oldest first
+     * @param roomId - room ID
+     * @param created - creation time of the last seen message
+     * @param id - ID of the last seen message
+     * @param pageable - size of page
+     * @return List of Messages
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE r.id = :roomId "
+            + "AND (m.created, m.id) > (:created, :id) "
+            + "ORDER BY m.created, m.id")
+    List<MessageDto> findRoomPageAfter(@Param("roomId") int roomId,
+                                       @Param("created") Timestamp created,
+                                       @Param("id") int id,
+                                       Pageable pageable);
+
+    /**
+     * Getting messages by IDs, oldest first
+     * @param ids - message IDs
+     * @return List of Messages
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE m.id IN :ids "
+            + "ORDER BY m.created, m.id")
+    List<MessageDto> findDtosByIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Getting page of messages created since the given time, oldest first
+     * @param from - start of range, inclusive
+     * @param pageable - size of page
+     * @return List of Messages
+     */
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE m.created >= :from "
+            + "ORDER BY m.created, m.id")
+    List<MessageDto> findCreatedSince(@Param("from") Timestamp from, Pageable pageable);
+
+    /**
+     * Streaming messages created in the time range, oldest first.
+     * Must be consumed inside a transaction and closed after use.
+     * @param from - start of range, inclusive
+     * @param to - end of range, exclusive
+     * @return Stream of Messages
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE m.created >= :from AND m.created < :to "
+            + "ORDER BY m.created, m.id")
+    Stream<MessageDto> streamByCreated(@Param("from") Timestamp from, @Param("to") Timestamp to);
+
+    /**
+     * Streaming messages of the room created in the time range, oldest first.
+     * Must be consumed inside a transaction and closed after use.
+     * @param roomId - room ID
+     * @param from - start of range, inclusive
+     * @param to - end of range, exclusive
+     * @return Stream of Messages
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query(SELECT_DTO + FROM_DTO
+            + "WHERE r.id = :roomId AND m.created >= :from AND m.created < :to "
+            + "ORDER BY m.created, m.id")
+    Stream<MessageDto> streamByRoomAndCreated(@Param("roomId") int roomId,
+                                              @Param("from") Timestamp from,
+                                              @Param("to") Timestamp to);
 }
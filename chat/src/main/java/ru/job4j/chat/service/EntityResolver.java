@@ -0,0 +1,149 @@
+package ru.job4j.chat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.job4j.chat.cache.BoundedCache;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.PersonRepository;
+import ru.job4j.chat.repository.RoleRepository;
+import ru.job4j.chat.repository.RoomRepository;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process lookup of Room, Person and Role objects for other services.
+ * Rooms and roles are served by the Hibernate second-level cache.
+ * Persons are kept in a bounded cache for chat.resolver.ttl seconds,
+ * services that change or delete persons must evict them after the change is saved.
+ * Inside a transaction the eviction is repeated after the transaction completes,
+ * so a concurrent lookup can not cache the state from before the commit.
+ */
+@Service
+@Slf4j
+public class EntityResolver {
+
+    /**
+     * DAO for models of Room
+     */
+    private final RoomRepository roomRepository;
+
+    /**
+     * DAO for objects of Person
+     */
+    private final PersonRepository personRepository;
+
+    /**
+     * DAO for Role models
+     */
+    private final RoleRepository roleRepository;
+
+    /**
+     * Persons by username of person
+     */
+    private final BoundedCache<String, Person> persons;
+
+    /**
+     * Time to live of cached persons in milliseconds
+     */
+    private final long ttl;
+
+    public EntityResolver(RoomRepository roomRepository,
+                          PersonRepository personRepository,
+                          RoleRepository roleRepository,
+                          @Value("${chat.resolver.cache-size:1000}") int cacheSize,
+                          @Value("${chat.resolver.ttl:30}") long ttlSeconds) {
+        this.roomRepository = roomRepository;
+        this.personRepository = personRepository;
+        this.roleRepository = roleRepository;
+        this.persons = new BoundedCache<>(cacheSize);
+        this.ttl = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    /**
+     * Method for resolving Room by room ID
+     * @param roomId - room ID
+     * @return object of Room
+     */
+    public Room resolveRoom(int roomId) {
+        String anchor = UUID.randomUUID().toString();
+        Optional<Room> room = roomRepository.findById(roomId);
+        if (room.isEmpty()) {
+            throw new IllegalArgumentException("Room not found. Actual parameters: room ID - " + roomId + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        return room.get();
+    }
+
+    /**
+     * Method for resolving Person by username of person
+     * @param username - username of Person
+     * @return object of Person
+     */
+    public Person resolvePerson(String username) {
+        Optional<Person> cached = persons.get(username);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        String anchor = UUID.randomUUID().toString();
+        Optional<Person> person = personRepository.findByUsername(username);
+        if (person.isEmpty()) {
+            throw new IllegalArgumentException("Person not found. Actual parameters: username of person - " + username + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        persons.put(username, person.get(), System.currentTimeMillis() + ttl);
+        return person.get();
+    }
+
+    /**
+     * Method for resolving Role by role ID
+     * @param roleId - role ID
+     * @return object of Role
+     */
+    public Role resolveRole(int roleId) {
+        String anchor = UUID.randomUUID().toString();
+        Optional<Role> role = roleRepository.findById(roleId);
+        if (role.isEmpty()) {
+            throw new IllegalArgumentException("Role not found. Actual parameters: role ID - " + roleId + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        return role.get();
+    }
+
+    /**
+     * Method for evicting Person from the cache
+     * @param username - username of Person
+     */
+    public void evictPerson(String username) {
+        persons.remove(username);
+        afterCompletion(() -> persons.remove(username));
+    }
+
+    /**
+     * Method for evicting persons that may hold the changed Role
+     * @param roleId - role ID
+     */
+    public void evictRole(int roleId) {
+        persons.clear();
+        afterCompletion(persons::clear);
+    }
+
+    /**
+     * Private method for repeating eviction after the current transaction completes
+     * @param eviction - eviction
+     */
+    private static void afterCompletion(Runnable eviction) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                eviction.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,179 @@
+package ru.job4j.chat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.job4j.chat.cache.BoundedCache;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.MessageDto;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idempotent creation of messages with a key supplied by client.
+ * Repeats of a key within chat.idempotency.window seconds return the message created by the first request.
+ * The key is reserved, the message is inserted and the key is completed in one transaction,
+ * so a concurrent request of the same key, on any instance, waits on the key row until that transaction ends
+ * and then finds the message, or creates it if the transaction was rolled back.
+ * Keyed posts bypass write-behind ingestion. Recent keys are answered from memory.
+ */
+@Service
+@Slf4j
+public class IdempotentMessageService {
+
+    /**
+     * Maximum length of key, see db/update_008.sql
+     */
+    public static final int MAX_KEY_LENGTH = 255;
+
+    /**
+     * Reserves the key, waits while another transaction holds it.
+     * A row older than the dedup window is free before the cleanup deletes it and is reserved again.
+     */
+    private static final String RESERVE = "insert into message_idempotency (person_id, idempotency_key, created) "
+            + "values (?, ?, now()) on conflict (person_id, idempotency_key) "
+            + "do update set message_id = null, created = excluded.created where message_idempotency.created < ?";
+
+    private static final String COMPLETE = "update message_idempotency set message_id = ? "
+            + "where person_id = ? and idempotency_key = ?";
+
+    private static final String FIND = "select message_id from message_idempotency "
+            + "where person_id = ? and idempotency_key = ?";
+
+    private static final String DELETE_EXPIRED = "delete from message_idempotency where created < ?";
+
+    private final MessageService messageService;
+
+    private final MessageRepository messageRepository;
+
+    private final EntityResolver resolver;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Dedup window in milliseconds
+     */
+    private final long window;
+
+    /**
+     * Created messages by username and key
+     */
+    private final BoundedCache<String, MessageDto> created;
+
+    public IdempotentMessageService(MessageService messageService,
+                                    MessageRepository messageRepository,
+                                    EntityResolver resolver,
+                                    JdbcTemplate jdbcTemplate,
+                                    TransactionTemplate transactionTemplate,
+                                    @Value("${chat.idempotency.window:86400}") long windowSeconds,
+                                    @Value("${chat.idempotency.cache-size:10000}") int cacheSize) {
+        this.messageService = messageService;
+        this.messageRepository = messageRepository;
+        this.resolver = resolver;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.window = TimeUnit.SECONDS.toMillis(windowSeconds);
+        this.created = new BoundedCache<>(cacheSize);
+    }
+
+    /**
+     * Method for creating new message once per key of the current user
+     * @param roomId - room ID
+     * @param message - object of Message
+     * @param key - idempotency key of client
+     * @return created message, or message created earlier with the same key
+     */
+    public MessageDto addMessage(int roomId, Message message, String key) {
+        String anchor = UUID.randomUUID().toString();
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Invalid idempotency key. Actual parameters: length - " + key.length() + ", maximum - " + MAX_KEY_LENGTH + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        String cacheKey = username + '\n' + key;
+        Optional<MessageDto> cached = created.get(cacheKey);
+        if (cached.isPresent()) {
+            return checkSame(cached.get(), roomId, message, key);
+        }
+        int personId = resolver.resolvePerson(username).getId();
+        Timestamp expired = new Timestamp(System.currentTimeMillis() - window);
+        Message inserted = transactionTemplate.execute(status -> jdbcTemplate.update(RESERVE, personId, key, expired) == 1
+                ? insert(roomId, message, key, personId)
+                : null);
+        MessageDto result;
+        if (inserted != null) {
+            messageService.announceMessage(inserted);
+            result = MessageDto.of(inserted);
+        } else {
+            result = checkSame(find(personId, key), roomId, message, key);
+        }
+        created.put(cacheKey, result, System.currentTimeMillis() + window);
+        return result;
+    }
+
+    /**
+     * Method for deleting keys older than the dedup window
+     */
+    @Scheduled(fixedDelayString = "${chat.idempotency.cleanup-interval:600000}")
+    public void deleteExpired() {
+        int deleted = jdbcTemplate.update(DELETE_EXPIRED, new Timestamp(System.currentTimeMillis() - window));
+        if (deleted > 0) {
+            log.debug("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    /**
+     * Private method for inserting the message of the key reserved in the current transaction
+     * @param roomId - room ID
+     * @param message - object of Message
+     * @param key - idempotency key
+     * @param personId - ID of the current user
+     * @return created message
+     */
+    private Message insert(int roomId, Message message, String key, int personId) {
+        Message inserted = messageService.insertMessage(roomId, message);
+        jdbcTemplate.update(COMPLETE, inserted.getId(), personId, key);
+        return inserted;
+    }
+
+    /**
+     * Private method for finding the message created with the key by a committed request
+     * @param personId - ID of the current user
+     * @param key - idempotency key
+     * @return message of the key
+     */
+    private MessageDto find(int personId, String key) {
+        String anchor = UUID.randomUUID().toString();
+        List<Integer> ids = jdbcTemplate.queryForList(FIND, Integer.class, personId, key);
+        Optional<MessageDto> found = ids.isEmpty() || ids.get(0) == null
+                ? Optional.empty()
+                : messageRepository.findDtoById(ids.get(0));
+        return found.orElseThrow(() -> new IllegalArgumentException("Message of the idempotency key is not found, it may have been deleted. Actual parameters: key - " + key + ". Please contact technical support with the 'anchor'. anchor: " + anchor));
+    }
+
+    /**
+     * Private method for checking that the key is repeated with the same message
+     * @param existing - message created with the key
+     * @param roomId - room ID of the request
+     * @param message - message of the request
+     * @param key - idempotency key
+     * @return existing message
+     */
+    private MessageDto checkSame(MessageDto existing, int roomId, Message message, String key) {
+        String anchor = UUID.randomUUID().toString();
+        if (existing.getRoomId() != roomId || !existing.getText().equals(message.getText())) {
+            throw new IllegalArgumentException("Idempotency key is already used for another message. Actual parameters: key - " + key + ", room ID - " + roomId + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        return existing;
+    }
+}
@@ -0,0 +1,186 @@
+package ru.job4j.chat.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.event.MessageCreatedEvent;
+import ru.job4j.chat.model.ErrorMessages;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.MessageBatchItem;
+import ru.job4j.chat.model.MessageBatchResult;
+import ru.job4j.chat.model.MessageDto;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.ratelimit.RateLimitFilter;
+import ru.job4j.chat.ratelimit.RateLimiter;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Batch reads and writes of messages for clients that sync many rooms.
+ * Every item gets its own result, an invalid item fails alone and does not fail the batch.
+ * Every new message takes a token of the rate limit of single posts to its room (POST /message/room/{id}),
+ * so a batch does not bypass that limit; items over the limit fail alone too.
+ */
+@Service
+public class MessageBatchService {
+
+    /**
+     * Maximum length of text, see column messages.text
+     */
+    public static final int MAX_TEXT_LENGTH = 2000;
+
+    private final MessageRepository messageRepository;
+
+    private final EntityResolver resolver;
+
+    private final ApplicationEventPublisher publisher;
+
+    /**
+     * Versions of room histories for ETags
+     */
+    private final ResourceVersionService versions;
+
+    private final RateLimiter limiter;
+
+    /**
+     * Maximum number of items of one batch
+     */
+    private final int maxSize;
+
+    public MessageBatchService(MessageRepository messageRepository,
+                               EntityResolver resolver,
+                               ApplicationEventPublisher publisher,
+                               ResourceVersionService versions,
+                               RateLimiter limiter,
+                               @Value("${chat.message.batch.max-size:100}") int maxSize) {
+        this.messageRepository = messageRepository;
+        this.resolver = resolver;
+        this.publisher = publisher;
+        this.versions = versions;
+        this.limiter = limiter;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Method for creating messages of the current user in one transaction.
+     * Versions are bumped and events are published after the commit.
+     * Valid items are inserted with JDBC batching (hibernate.jdbc.batch_size), IDs come from the pooled sequence.
+     * @param items - rooms and texts of new messages
+     * @return results in the order of items
+     */
+    @Transactional
+    public List<MessageBatchResult> createMessages(List<MessageBatchItem> items) {
+        checkSize(items.size());
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        Person person = resolver.resolvePerson(username);
+        Map<Integer, Room> rooms = new HashMap<>();
+        MessageBatchResult[] results = new MessageBatchResult[items.size()];
+        List<Message> messages = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            MessageBatchItem item = items.get(i);
+            try {
+                String anchor = UUID.randomUUID().toString();
+                if (item == null || item.getText() == null || item.getText().isBlank()) {
+                    throw new IllegalArgumentException("Text of message is empty. Actual parameters: item - " + i + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+                }
+                if (item.getText().length() > MAX_TEXT_LENGTH) {
+                    throw new IllegalArgumentException("Text of message is too long. Actual parameters: item - " + i + ", length - " + item.getText().length() + ", maximum - " + MAX_TEXT_LENGTH + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+                }
+                Room room = rooms.get(item.getRoomId());
+                if (room == null) {
+                    room = resolver.resolveRoom(item.getRoomId());
+                    rooms.put(room.getId(), room);
+                }
+                long wait = limiter.acquire(username, "POST", "/message/room/" + room.getId());
+                if (wait > 0) {
+                    results[i] = MessageBatchResult.failed(new ErrorMessages(
+                            "Too many requests", "Too many messages. Actual parameters: item - " + i + ", room ID - " + room.getId() + ", retry after - " + RateLimitFilter.retryAfterSeconds(wait) + " s. Please contact technical support with the 'anchor'. ", anchor
+                    ));
+                    continue;
+                }
+                messages.add(Message.of(item.getText(), room, person));
+                positions.add(i);
+            } catch (IllegalArgumentException e) {
+                results[i] = MessageBatchResult.failed(errorOf(e));
+            }
+        }
+        if (messages.isEmpty()) {
+            return List.of(results);
+        }
+        messageRepository.saveAll(messages);
+        List<MessageDto> created = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            MessageDto message = MessageDto.of(messages.get(i));
+            created.add(message);
+            results[positions.get(i)] = MessageBatchResult.of(message);
+        }
+        Transactions.afterCommit(() -> {
+            versions.bump(created.stream()
+                    .map(message -> ResourceVersionService.room(message.getRoomId()))
+                    .collect(Collectors.toList()));
+            created.forEach(message -> publisher.publishEvent(new MessageCreatedEvent(message)));
+        });
+        return List.of(results);
+    }
+
+    /**
+     * Method for getting messages by IDs with one query
+     * @param ids - message IDs
+     * @return results in the order of IDs, missing messages are failed results
+     */
+    @Transactional(readOnly = true)
+    public List<MessageBatchResult> findMessages(List<Integer> ids) {
+        checkSize(ids.size());
+        List<Integer> present = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        Map<Integer, MessageDto> found = present.isEmpty()
+                ? new HashMap<>()
+                : messageRepository.findDtosByIds(present).stream()
+                        .collect(Collectors.toMap(MessageDto::getId, Function.identity()));
+        List<MessageBatchResult> results = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            MessageDto message = found.get(id);
+            if (message != null) {
+                results.add(MessageBatchResult.of(message));
+            } else {
+                String anchor = UUID.randomUUID().toString();
+                results.add(MessageBatchResult.failed(new ErrorMessages(
+                        "Validation error", "Message not found. Actual parameters: message ID - " + id + ". Please contact technical support with the 'anchor'. ", anchor
+                )));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Private method for checking size of batch
+     * @param size - number of items
+     */
+    private void checkSize(int size) {
+        String anchor = UUID.randomUUID().toString();
+        if (size > maxSize) {
+            throw new IllegalArgumentException("Too many items in batch. Actual parameters: size - " + size + ", maximum - " + maxSize + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+    }
+
+    /**
+     * Private method for building error of item from exception, the same way GlobalExceptionHandler does
+     * @param e - exception of item
+     * @return ErrorMessages object
+     */
+    private static ErrorMessages errorOf(IllegalArgumentException e) {
+        String[] messages = e.getMessage().split("anchor:");
+        return new ErrorMessages("Validation error", messages[0], messages.length > 1 ? messages[1].trim() : null);
+    }
+}
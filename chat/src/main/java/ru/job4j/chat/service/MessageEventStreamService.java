@@ -0,0 +1,304 @@
+package ru.job4j.chat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.job4j.chat.event.MessageCreatedEvent;
+import ru.job4j.chat.model.MessageDto;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Logic for Server-Sent Events streams of room messages.
+ * New messages are put into a bounded queue of every stream and sent by chat.sse.sender-threads threads,
+ * so the thread that created the message never writes to clients. A stream whose queue of
+ * chat.sse.subscriber-queue-capacity messages overflows is closed, its client reconnects with Last-Event-ID.
+ */
+@Service
+@Slf4j
+public class MessageEventStreamService implements DisposableBean {
+
+    /**
+     * Name of SSE event with a new message
+     */
+    public static final String EVENT_NAME = "message";
+
+    private final RoomMessageBuffer buffer;
+
+    /**
+     * Used for catch-up when the ring buffer no longer holds Last-Event-ID
+     */
+    private final MessageService messageService;
+
+    private final ObjectMapper mapper;
+
+    /**
+     * Timeout of one stream in milliseconds, clients reconnect with Last-Event-ID after it
+     */
+    private final long timeout;
+
+    /**
+     * Maximum number of messages waiting to be sent to one stream
+     */
+    private final int queueCapacity;
+
+    /**
+     * Senders of queued messages, at most one task per stream is queued or running
+     */
+    private final ThreadPoolExecutor senders;
+
+    /**
+     * Open streams by room ID
+     */
+    private final Map<Integer, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    public MessageEventStreamService(RoomMessageBuffer buffer,
+                                     MessageService messageService,
+                                     ObjectMapper mapper,
+                                     MeterRegistry registry,
+                                     @Value("${chat.sse.timeout:1800000}") long timeout,
+                                     @Value("${chat.sse.subscriber-queue-capacity:256}") int queueCapacity,
+                                     @Value("${chat.sse.sender-threads:8}") int senderThreads) {
+        this.buffer = buffer;
+        this.messageService = messageService;
+        this.mapper = mapper;
+        this.timeout = timeout;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger number = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(
+                senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                task -> {
+                    Thread thread = new Thread(task, "sse-sender-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        new ExecutorServiceMetrics(senders, "sse-sender", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * Method for opening new stream of the room.
+     * Messages missed after Last-Event-ID are sent first, from the ring buffer if it still holds them.
+     * New messages are queued meanwhile and sent after them, except the messages already sent by the catch-up:
+     * the stream is registered before the catch-up reads missed messages, so a new message may be in both.
+     * @param roomId - room ID
+     * @param lastEventId - ID of the last message seen by client (null for a new client)
+     * @return SseEmitter object
+     */
+    public SseEmitter subscribe(int roomId, Integer lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Set<Subscriber> roomSubscribers = subscribers.computeIfAbsent(roomId, id -> new CopyOnWriteArraySet<>());
+        Subscriber subscriber = new Subscriber(emitter, roomSubscribers);
+        roomSubscribers.add(subscriber);
+        emitter.onCompletion(() -> roomSubscribers.remove(subscriber));
+        emitter.onTimeout(() -> roomSubscribers.remove(subscriber));
+        emitter.onError(e -> roomSubscribers.remove(subscriber));
+        if (lastEventId != null) {
+            Optional<List<MessageDto>> buffered = buffer.after(roomId, lastEventId);
+            List<MessageDto> missed = buffered.isPresent()
+                    ? buffered.get()
+                    : messageService.findRoomMessagesAfter(roomId, lastEventId, MessageService.MAX_PAGE_SIZE);
+            for (MessageDto message : missed) {
+                if (!send(emitter, message.getId(), toJson(message))) {
+                    roomSubscribers.remove(subscriber);
+                    return emitter;
+                }
+                subscriber.caughtUp.add(message.getId());
+            }
+        }
+        subscriber.release();
+        return emitter;
+    }
+
+    /**
+     * Method for buffering new message and queueing it to open streams of the room.
+     * The message is serialized once for all streams, nothing is written on the calling thread.
+     * @param event - event of created message
+     */
+    @EventListener
+    public void onMessageCreated(MessageCreatedEvent event) {
+        int roomId = event.getRoomId();
+        buffer.add(roomId, event.getMessage());
+        Set<Subscriber> roomSubscribers = subscribers.get(roomId);
+        if (roomSubscribers == null || roomSubscribers.isEmpty()) {
+            return;
+        }
+        Event queued = new Event(event.getMessage().getId(), toJson(event.getMessage()));
+        for (Subscriber subscriber : roomSubscribers) {
+            subscriber.offer(queued);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        senders.shutdownNow();
+    }
+
+    /**
+     * Private method for sending one event
+     * @param emitter - stream
+     * @param id - message ID, used as event ID
+     * @param json - serialized message
+     * @return false if the stream is broken
+     */
+    private boolean send(SseEmitter emitter, int id, String json) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(String.valueOf(id))
+                    .name(EVENT_NAME)
+                    .data(json, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Serialized message waiting to be sent
+     */
+    private static final class Event {
+
+        private final int id;
+
+        private final String json;
+
+        private Event(int id, String json) {
+            this.id = id;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Open stream with its queue of messages.
+     * The stream is owned by at most one thread at a time: the request thread while missed messages are sent,
+     * then a sender while the queue is drained.
+     */
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final Set<Subscriber> roomSubscribers;
+
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        /**
+         * IDs of messages sent by the catch-up, used only by the thread that owns the stream.
+         * Message IDs do not follow creation order, so the queue is deduplicated by ID and not by the last ID.
+         */
+        private final Set<Integer> caughtUp = new HashSet<>();
+
+        /**
+         * True while a thread owns the stream, the request thread owns it until release
+         */
+        private final AtomicBoolean draining = new AtomicBoolean(true);
+
+        private Subscriber(SseEmitter emitter, Set<Subscriber> roomSubscribers) {
+            this.emitter = emitter;
+            this.roomSubscribers = roomSubscribers;
+        }
+
+        /**
+         * Method for queueing message, the stream is closed when its queue is full
+         * @param event - message
+         */
+        private void offer(Event event) {
+            if (!queue.offer(event)) {
+                log.debug("Queue of SSE stream is full, the stream is closed");
+                close();
+                return;
+            }
+            schedule();
+        }
+
+        /**
+         * Method for giving the stream to senders after missed messages are sent
+         */
+        private void release() {
+            draining.set(false);
+            schedule();
+        }
+
+        /**
+         * Method for starting sender when messages are queued and no thread owns the stream
+         */
+        private void schedule() {
+            if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                senders.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        /**
+         * Method for sending queued messages until the queue is empty
+         */
+        private void drain() {
+            do {
+                Event event;
+                while ((event = queue.poll()) != null) {
+                    if (caughtUp.remove(event.id)) {
+                        continue;
+                    }
+                    if (!send(emitter, event.id, event.json)) {
+                        roomSubscribers.remove(this);
+                        return;
+                    }
+                }
+                draining.set(false);
+            } while (!queue.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        /**
+         * Method for closing the stream
+         */
+        private void close() {
+            roomSubscribers.remove(this);
+            queue.clear();
+            emitter.complete();
+        }
+    }
+
+    /**
+     * Private method for serializing message
+     * @param message - message
+     * @return JSON string
+     */
+    private String toJson(MessageDto message) {
+        try {
+            return mapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            String anchor = UUID.randomUUID().toString();
+            throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ru.job4j.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.model.MessageDto;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Logic for exporting messages as NDJSON (one JSON object per line)
+ */
+@Service
+@Slf4j
+public class MessageExportService {
+
+    /**
+     * Start of time range when it is not given
+     */
+    private static final Timestamp MIN_CREATED = new Timestamp(0);
+
+    /**
+     * End of time range when it is not given
+     */
+    private static final Timestamp MAX_CREATED = Timestamp.valueOf("9999-12-31 00:00:00");
+
+    /**
+     * Number of rows written between flushes of the output stream
+     */
+    private static final int FLUSH_EVERY = 100;
+
+    /**
+     * DAO for messages
+     */
+    private final MessageRepository messageRepository;
+
+    private final ObjectWriter writer;
+
+    public MessageExportService(MessageRepository messageRepository,
+                                ObjectMapper mapper) {
+        this.messageRepository = messageRepository;
+        this.writer = mapper.writerFor(MessageDto.class);
+    }
+
+    /**
+     * Method for writing messages to the output stream row by row.
+     * Rows are read as projections through a server-side cursor, nothing is kept
+     * in the persistence context, so memory use does not depend on the number of exported messages.
+     * @param roomId - room ID (null for all rooms)
+     * @param from - start of time range, inclusive (null for no bound)
+     * @param to - end of time range, exclusive (null for no bound)
+     * @param out - output stream
+     * @return number of written messages
+     * @throws IOException
+     */
+    @Transactional(readOnly = true)
+    public long exportMessages(Integer roomId, Timestamp from, Timestamp to, OutputStream out) throws IOException {
+        Timestamp start = from == null ? MIN_CREATED : from;
+        Timestamp end = to == null ? MAX_CREATED : to;
+        long count = 0;
+        try (Stream<MessageDto> messages = roomId == null
+                ? messageRepository.streamByCreated(start, end)
+                : messageRepository.streamByRoomAndCreated(roomId, start, end)) {
+            Iterator<MessageDto> iterator = messages.iterator();
+            while (iterator.hasNext()) {
+                out.write(writer.writeValueAsBytes(iterator.next()));
+                out.write('\n');
+                count++;
+                if (count % FLUSH_EVERY == 0) {
+                    out.flush();
+                }
+            }
+        }
+        out.flush();
+        log.debug("Exported {} messages. Room ID: {}, from: {}, to: {}", count, roomId, from, to);
+        return count;
+    }
+}
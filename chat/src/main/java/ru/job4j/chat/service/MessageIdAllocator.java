@@ -0,0 +1,62 @@
+package ru.job4j.chat.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.job4j.chat.model.Message;
+
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pooled allocation of message IDs from the messages sequence.
+ * One call of the sequence reserves Message.ID_ALLOCATION_SIZE IDs ending with the returned value,
+ * the same way Hibernate's pooled optimizer does, so both can share the sequence.
+ */
+@Component
+@RequiredArgsConstructor
+public class MessageIdAllocator {
+
+    private static final String NEXT_VALUE = "select nextval('" + Message.ID_SEQUENCE + "')";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Guards the reserved block. A lock instead of synchronized, so a virtual thread waiting
+     * for the sequence does not pin its carrier thread.
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Next free ID of the reserved block
+     */
+    private long next = 1;
+
+    /**
+     * Last ID of the reserved block
+     */
+    private long high;
+
+    /**
+     * Method for getting next free message ID
+     * @return message ID
+     */
+    public int next() {
+        lock.lock();
+        try {
+            if (next > high) {
+                Long value = jdbcTemplate.queryForObject(NEXT_VALUE, Long.class);
+                if (value == null) {
+                    String anchor = UUID.randomUUID().toString();
+                    throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
+                }
+                high = value;
+                next = value - Message.ID_ALLOCATION_SIZE + 1;
+            }
+            return Math.toIntExact(next++);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package ru.job4j.chat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.job4j.chat.event.ClusterEventBus;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Maintenance of monthly partitions of messages (db/update_006.sql).
+ * Partitions are created chat.partition.months-ahead months ahead of time.
+ * Partitions older than chat.archive.retention-months are detached, exported to gzipped CSV files
+ * in chat.archive.dir and dropped. Runs on startup and by chat.partition.cron,
+ * one instance at a time under a Postgres advisory lock. An archive run may take long, the scheduler has
+ * a thread per scheduled job (spring.task.scheduling.pool.size), so other jobs keep running meanwhile.
+ * DDL waits for locks on messages at most chat.partition.lock-timeout milliseconds, so it never queues
+ * posts and reads behind a long transaction; a partition that did not get its lock is handled by the next run.
+ * On Postgres 14 and later partitions are detached concurrently, without the ACCESS EXCLUSIVE lock.
+ * Messages of a partition are subtracted from room_message_counts (db/update_011.sql) in the transaction
+ * that drops it, so they are subtracted exactly once, and every instance is notified through channel chat_archived.
+ */
+@Component
+@Slf4j
+public class MessagePartitionMaintainer {
+
+    private static final String PARTITION_PREFIX = "messages_p";
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final Pattern PARTITION_NAME = Pattern.compile(PARTITION_PREFIX + "\\d{6}");
+
+    /**
+     * Key of the advisory lock held while partitions are maintained
+     */
+    private static final long LOCK_KEY = 0x6d657373L;
+
+    private static final String ATTACHED = "select c.relname from pg_inherits i "
+            + "join pg_class c on c.oid = i.inhrelid join pg_class p on p.oid = i.inhparent "
+            + "where p.relname = 'messages'";
+
+    /**
+     * Partitions whose concurrent detach was interrupted, Postgres 14 and later
+     */
+    private static final String DETACH_PENDING = ATTACHED + " and i.inhdetachpending";
+
+    /**
+     * SQLState of lock_not_available, raised when lock_timeout expires
+     */
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+
+    /**
+     * First major version of Postgres with detach partition concurrently
+     */
+    private static final int CONCURRENT_DETACH_VERSION = 14;
+
+    /**
+     * Subtraction of messages of the partition from counts of rooms, with notification of every room
+     */
+    private static final String SUBTRACT = "with archived as ("
+            + "select room_id, count(*) as total from %s where room_id is not null group by room_id"
+            + "), counted as ("
+            + "update room_message_counts c set total = c.total - a.total from archived a where c.room_id = a.room_id"
+            + ") select pg_notify('" + ClusterEventBus.ARCHIVED_CHANNEL + "', room_id || ',' || total) from archived";
+
+    private static final String DETACHED = "select relname from pg_class "
+            + "where relkind = 'r' and not relispartition and relname ~ '^" + PARTITION_PREFIX + "[0-9]{6}$'";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Versions of room histories, bumped when old messages are detached
+     */
+    private final ResourceVersionService versions;
+
+    private final int monthsAhead;
+
+    private final int retentionMonths;
+
+    private final Path archiveDir;
+
+    /**
+     * Maximum wait for locks of DDL in milliseconds
+     */
+    private final long lockTimeout;
+
+    public MessagePartitionMaintainer(JdbcTemplate jdbcTemplate,
+                                      ResourceVersionService versions,
+                                      @Value("${chat.partition.months-ahead:3}") int monthsAhead,
+                                      @Value("${chat.archive.retention-months:12}") int retentionMonths,
+                                      @Value("${chat.archive.dir:archive}") String archiveDir,
+                                      @Value("${chat.partition.lock-timeout:5000}") long lockTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.versions = versions;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.archiveDir = Paths.get(archiveDir);
+        this.lockTimeout = lockTimeout;
+    }
+
+    /**
+     * Method for creating future partitions and archiving old ones
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${chat.partition.cron:0 0 3 * * *}")
+    public void maintain() {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            if (!lock(connection, "pg_try_advisory_lock")) {
+                log.info("Partitions of messages are maintained by another instance");
+                return null;
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("set lock_timeout = " + lockTimeout);
+            }
+            try {
+                YearMonth current = YearMonth.now();
+                createPartitions(connection, current);
+                if (detachPartitions(connection, current.minusMonths(retentionMonths)) > 0) {
+                    versions.bumpAll(ResourceVersionService.ROOM_PREFIX);
+                }
+                for (String partition : names(connection, DETACHED)) {
+                    archive(connection, partition);
+                }
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("reset lock_timeout");
+                }
+                lock(connection, "pg_advisory_unlock");
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Private method for creating missing partitions from the current month to monthsAhead
+     * @param connection - connection to the database
+     * @param current - current month
+     * @throws SQLException if a partition was not created
+     */
+    private void createPartitions(Connection connection, YearMonth current) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (int i = 0; i <= monthsAhead; i++) {
+                YearMonth month = current.plusMonths(i);
+                try {
+                    statement.execute("create table if not exists " + partitionOf(month)
+                            + " partition of messages for values from ('" + month.atDay(1)
+                            + "') to ('" + month.plusMonths(1).atDay(1) + "')");
+                } catch (SQLException e) {
+                    if (!LOCK_NOT_AVAILABLE.equals(e.getSQLState())) {
+                        throw e;
+                    }
+                    log.warn("Partition {} of messages is not created, messages are locked, next attempt with the next run", partitionOf(month));
+                }
+            }
+        }
+    }
+
+    /**
+     * Private method for detaching partitions older than the given month.
+     * Concurrent detach runs outside of a transaction, the connection of maintain is in autocommit mode.
+     * A concurrent detach that was interrupted is finalized.
+     * @param connection - connection to the database
+     * @param oldest - oldest month that is kept
+     * @return number of detached partitions
+     * @throws SQLException if a partition was not detached
+     */
+    private int detachPartitions(Connection connection, YearMonth oldest) throws SQLException {
+        String bound = partitionOf(oldest);
+        boolean concurrently = connection.getMetaData().getDatabaseMajorVersion() >= CONCURRENT_DETACH_VERSION;
+        List<String> pending = concurrently ? names(connection, DETACH_PENDING) : List.of();
+        int detached = 0;
+        try (Statement statement = connection.createStatement()) {
+            for (String partition : names(connection, ATTACHED)) {
+                if (!PARTITION_NAME.matcher(partition).matches() || partition.compareTo(bound) >= 0) {
+                    continue;
+                }
+                String mode = pending.contains(partition) ? " finalize" : concurrently ? " concurrently" : "";
+                try {
+                    statement.execute("alter table messages detach partition " + partition + mode);
+                } catch (SQLException e) {
+                    if (!LOCK_NOT_AVAILABLE.equals(e.getSQLState())) {
+                        throw e;
+                    }
+                    log.warn("Partition {} of messages is not detached, messages are locked, next attempt with the next run", partition);
+                    continue;
+                }
+                log.info("Partition {} of messages is detached", partition);
+                detached++;
+            }
+        }
+        return detached;
+    }
+
+    /**
+     * Private method for exporting detached partition to gzipped CSV file and dropping it.
+     * The file is written under temporary name and renamed when it is synced to disk,
+     * the partition is kept when export fails and is exported again by the next run.
+     * Its messages are subtracted from counts of rooms in the transaction of drop.
+     * @param connection - connection to the database
+     * @param partition - name of detached partition
+     * @throws SQLException if the partition was not dropped
+     */
+    private void archive(Connection connection, String partition) throws SQLException {
+        Path target = archiveDir.resolve(partition + ".csv.gz");
+        Path temp = archiveDir.resolve(partition + ".csv.gz.part");
+        long rows;
+        try {
+            Files.createDirectories(archiveDir);
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 GZIPOutputStream out = new GZIPOutputStream(file)) {
+                rows = connection.unwrap(PGConnection.class).getCopyAPI().copyOut(
+                        "copy (select id, text, created, room_id, person_id from " + partition
+                                + " order by created, id) to stdout with (format csv, header)", out);
+                out.finish();
+                file.getFD().sync();
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | SQLException e) {
+            log.error("Partition {} of messages is not archived, next attempt with the next run", partition, e);
+            return;
+        }
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format(SUBTRACT, partition));
+            statement.execute("drop table " + partition);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        log.info("Partition {} of messages is archived to {}, rows: {}", partition, target, rows);
+    }
+
+    /**
+     * Private method for getting names of partitions
+     * @param connection - connection to the database
+     * @param sql - query of names
+     * @return List of names
+     * @throws SQLException if the query failed
+     */
+    private List<String> names(Connection connection, String sql) throws SQLException {
+        List<String> result = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                result.add(rs.getString(1));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Private method for taking or releasing the advisory lock
+     * @param connection - connection to the database
+     * @param function - pg_try_advisory_lock or pg_advisory_unlock
+     * @return result of the function
+     * @throws SQLException if the query failed
+     */
+    private boolean lock(Connection connection, String function) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select " + function + "(" + LOCK_KEY + ")")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    /**
+     * Private method for getting name of partition of the month
+     * @param month - month
+     * @return name of partition
+     */
+    private static String partitionOf(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+}
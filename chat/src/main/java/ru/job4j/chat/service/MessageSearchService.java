@@ -0,0 +1,136 @@
+package ru.job4j.chat.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.model.MessageDto;
+import ru.job4j.chat.model.MessageSearchPage;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Logic for full-text search of messages.
+ * Matches are found by GIN index messages_text_tsv_idx (db/update_004.sql),
+ * ranked by ts_rank and paginated by the (rank, id) key of the last returned message.
+ * Only the newest chat.search.max-candidates matches are ranked, so a query matching most messages
+ * does not compute ts_rank over all of them.
+ */
+@Service
+public class MessageSearchService {
+
+    /**
+     * Maximum length of search query
+     */
+    public static final int MAX_QUERY_LENGTH = 200;
+
+    /**
+     * Room ID meaning "all rooms", IDs of rooms start from 1
+     */
+    private static final int ALL_ROOMS = 0;
+
+    /**
+     * Separator of rank and message ID in the cursor
+     */
+    private static final char CURSOR_SEPARATOR = '_';
+
+    private static final String SEARCH = "select * from ("
+            + "select c.id, c.text, c.created, r.id as room_id, r.name as room_name, "
+            + "p.id as person_id, p.username, ts_rank(c.text_tsv, c.q) as rank "
+            + "from ("
+            + "select m.id, m.text, m.created, m.room_id, m.person_id, m.text_tsv, q "
+            + "from messages m, websearch_to_tsquery('simple', :query) q "
+            + "where m.text_tsv @@ q and (:room = " + ALL_ROOMS + " or m.room_id = :room) "
+            + "order by m.id desc "
+            + "limit :candidates"
+            + ") c join rooms r on r.id = c.room_id join persons p on p.id = c.person_id"
+            + ") s "
+            + "where s.rank < :rank or (s.rank = :rank and s.id < :id) "
+            + "order by s.rank desc, s.id desc "
+            + "limit :limit";
+
+    private static final RowMapper<Ranked> ROW_MAPPER = (rs, rowNum) -> new Ranked(
+            new MessageDto(
+                    rs.getInt("id"), rs.getString("text"), rs.getTimestamp("created"),
+                    rs.getInt("room_id"), rs.getString("room_name"),
+                    rs.getInt("person_id"), rs.getString("username")),
+            rs.getFloat("rank"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Maximum number of newest matches that are ranked
+     */
+    private final int maxCandidates;
+
+    public MessageSearchService(NamedParameterJdbcTemplate jdbcTemplate,
+                                @Value("${chat.search.max-candidates:1000}") int maxCandidates) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Method for searching messages by text, best match first among the newest maxCandidates matches
+     * @param query - search query in web search syntax ("quoted phrase", -excluded, or)
+     * @param roomId - room ID (all rooms when null)
+     * @param cursor - cursor of previous page (first page when null)
+     * @param limit - size of page
+     * @return MessageSearchPage object
+     */
+    @Transactional(readOnly = true)
+    public MessageSearchPage search(String query, Integer roomId, String cursor, int limit) {
+        String anchor = UUID.randomUUID().toString();
+        if (query == null || query.isBlank() || query.length() > MAX_QUERY_LENGTH) {
+            throw new IllegalArgumentException("Invalid search query. Query must be from 1 to " + MAX_QUERY_LENGTH + " characters. Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        if (limit < 1 || limit > MessageService.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid size of page. Actual parameters: limit - " + limit + ", maximum - " + MessageService.MAX_PAGE_SIZE + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        float rank = Float.MAX_VALUE;
+        int id = Integer.MAX_VALUE;
+        if (cursor != null) {
+            int separator = cursor.indexOf(CURSOR_SEPARATOR);
+            try {
+                rank = Float.parseFloat(cursor.substring(0, separator));
+                id = Integer.parseInt(cursor.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor. Actual parameters: cursor - " + cursor + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+            }
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("query", query)
+                .addValue("room", roomId == null ? ALL_ROOMS : roomId)
+                .addValue("rank", rank)
+                .addValue("id", id)
+                .addValue("candidates", maxCandidates)
+                .addValue("limit", limit + 1);
+        List<Ranked> rows = jdbcTemplate.query(SEARCH, params, ROW_MAPPER);
+        String next = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            Ranked last = rows.get(limit - 1);
+            next = Float.toString(last.rank) + CURSOR_SEPARATOR + last.message.getId();
+        }
+        List<MessageDto> items = rows.stream().map(row -> row.message).collect(Collectors.toList());
+        return new MessageSearchPage(items, next);
+    }
+
+    /**
+     * Found message with its rank
+     */
+    private static final class Ranked {
+
+        private final MessageDto message;
+
+        private final float rank;
+
+        private Ranked(MessageDto message, float rank) {
+            this.message = message;
+            this.rank = rank;
+        }
+    }
+}
@@ -1,23 +1,22 @@
 package ru.job4j.chat.service;
 
 import lombok.AllArgsConstructor;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.*;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.event.MessageCreatedEvent;
 import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.MessageDto;
 import ru.job4j.chat.model.Person;
 import ru.job4j.chat.model.Room;
 import ru.job4j.chat.repository.MessageRepository;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.sql.Timestamp;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 /**
  * Logic for working with object of Message
@@ -27,11 +26,12 @@ import java.util.stream.StreamSupport;
 @AllArgsConstructor
 public class MessageService {
 
-    private static final String PERSON_API_USERNAME = "http://localhost:8080/users/username/{username}";
-
-    private static final String ROOM_API_ID = "http://localhost:8080/room/{id}";
-
-    private RestTemplate rest;
+    /**
+     * Partial update of messages, the creation time is stamped anew on every update
+     */
+    static final PatchMerger<Message> MERGER = PatchMerger.of(
+            Message.class, Map.of("created", value -> new Timestamp(System.currentTimeMillis()))
+    );
 
     /**
      * DAO for messages
@@ -39,28 +39,128 @@ public class MessageService {
     private final MessageRepository messageRepository;
 
     /**
-     * Method for getting all messages
+     * In-process lookup of rooms and persons
+     */
+    private final EntityResolver resolver;
+
+    /**
+     * Publisher of MessageCreatedEvent for real-time fan-out
+     */
+    private final ApplicationEventPublisher publisher;
+
+    /**
+     * Optional batched ingestion of new messages
+     */
+    private final MessageWriteBehind writeBehind;
+
+    /**
+     * Versions of room histories for ETags
+     */
+    private final ResourceVersionService versions;
+
+    /**
+     * Default number of messages on one page
+     */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * Maximum number of messages on one page
+     */
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * Method for getting page of all messages, newest first
+     * @param before - message ID, only older messages are returned (null for the first page)
+     * @param limit - size of page
+     * @return List of messages
+     */
+    @Transactional(readOnly = true)
+    public List<MessageDto> findAllMessages(Integer before, int limit) {
+        String anchor = UUID.randomUUID().toString();
+        Pageable page = pageOf(limit);
+        List<MessageDto> messageList = before == null
+                ? this.messageRepository.findPage(page)
+                : this.messageRepository.findPageBefore(before, page);
+        if (messageList == null) {
+            throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        return messageList;
+    }
+
+    /**
+     * Method for getting page of room history, newest first.
+     * Pages are sought by the (created, id) key of the last message of previous page,
+     * so the cost of the page does not depend on the depth of history.
+     * The key is taken from the message before, or given by client with beforeCreated. When the message before
+     * was deleted or archived and the client gave no creation time, the page starts from the nearest older
+     * message of the room by ID.
+     * @param roomId - room ID
+     * @param before - message ID, only older messages are returned (null for the first page)
+     * @param beforeCreated - creation time of the message before, only older messages are returned (may be null)
+     * @param limit - size of page
      * @return List of messages
      */
-    public List<Message> findAllMessages() {
+    @Transactional(readOnly = true)
+    public List<MessageDto> findRoomMessages(int roomId, Integer before, Timestamp beforeCreated, int limit) {
         String anchor = UUID.randomUUID().toString();
-        List<Message> messageList = StreamSupport.stream(
-                this.messageRepository.findAll().spliterator(), false
-        ).collect(Collectors.toList());
+        Pageable page = pageOf(limit);
+        List<MessageDto> messageList;
+        if (beforeCreated != null) {
+            int id = before == null ? Integer.MAX_VALUE : before;
+            messageList = this.messageRepository.findRoomPageBefore(roomId, beforeCreated, id, page);
+        } else if (before == null) {
+            messageList = this.messageRepository.findRoomPage(roomId, page);
+        } else {
+            Optional<MessageDto> last = this.messageRepository.findDtoById(before);
+            if (last.isPresent() && last.get().getRoomId() != roomId) {
+                throw new IllegalArgumentException("Message not found in room. Actual parameters: room ID - " + roomId + ", message ID - " + before + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+            }
+            if (last.isPresent()) {
+                messageList = this.messageRepository.findRoomPageBefore(
+                        roomId, last.get().getCreated(), last.get().getId(), page
+                );
+            } else {
+                messageList = this.messageRepository.findRoomNearestBefore(roomId, before, PageRequest.of(0, 1)).stream()
+                        .findFirst()
+                        .map(nearest -> this.messageRepository.findRoomPageFrom(
+                                roomId, nearest.getCreated(), nearest.getId(), page
+                        ))
+                        .orElseGet(List::of);
+            }
+        }
         if (messageList == null) {
             throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
         }
         return messageList;
     }
 
+    /**
+     * Method for getting messages of the room that follow the given message, oldest first
+     * @param roomId - room ID
+     * @param after - ID of the last seen message
+     * @param limit - maximum number of messages
+     * @return List of messages, empty if the given message does not exist in the room
+     */
+    @Transactional(readOnly = true)
+    public List<MessageDto> findRoomMessagesAfter(int roomId, int after, int limit) {
+        Optional<MessageDto> last = this.messageRepository.findDtoById(after);
+        if (last.isEmpty() || last.get().getRoomId() != roomId) {
+            return List.of();
+        }
+        return this.messageRepository.findRoomPageAfter(
+                roomId, last.get().getCreated(), last.get().getId(), pageOf(limit)
+        );
+    }
+
     /**
      * Method for getting List of messages by user ID
      * @param userId - user ID
      * @return List of messages
      */
-    public List<Message> findMessagesByUserId(int userId) {
+    @Transactional(readOnly = true)
+    public List<MessageDto> findMessagesByUserId(int userId) {
         String anchor = UUID.randomUUID().toString();
-        List<Message> messageList = this.messageRepository.findAllMessagesByUserId(userId);
+        List<MessageDto> messageList = this.messageRepository.findAllMessagesByUserId(userId);
         if (messageList == null) {
             throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
         }
@@ -72,9 +172,10 @@ public class MessageService {
      * @param messageId - message ID
      * @return - object of Message
      */
-    public Message findMessageByMessageId(int messageId) {
+    @Transactional(readOnly = true)
+    public MessageDto findMessageByMessageId(int messageId) {
         String anchor = UUID.randomUUID().toString();
-        Optional<Message> message = this.messageRepository.findById(messageId);
+        Optional<MessageDto> message = this.messageRepository.findDtoById(messageId);
         if (message.isEmpty()) {
             throw new IllegalArgumentException("Message not found. Actual parameters: message ID - " + messageId + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
         }
@@ -82,41 +183,54 @@ public class MessageService {
     }
 
     /**
-     * Method for creating new message
+     * Method for creating new message.
+     * With write-behind ingestion the message is returned before it is inserted
+     * and MessageCreatedEvent is published by MessageWriteBehind after the insert.
+     * Room and author are looked up in the write transaction, so they are read from the primary.
      * @param roomId - room ID
      * @param message - object of Message
-     * @param token - JWT token (String)
-     * @return Message
+     * @return Created object of Message
      */
-    public Message addMessage(int roomId, Message message, String token) {
-        String anchor = UUID.randomUUID().toString();
-        if (message.getText() == null) {
-            throw new IllegalArgumentException("Text of message is empty. Please contact technical support with the 'anchor'. anchor: " + anchor);
-        }
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", token);
-        HttpEntity<?> entity = new HttpEntity<>(headers);
-        ResponseEntity<Room> room = rest.exchange(ROOM_API_ID, HttpMethod.GET, entity, Room.class, roomId);
-        if (room.getBody() == null) {
-            throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-        }
-        String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        ResponseEntity<Person> person = rest.exchange(PERSON_API_USERNAME, HttpMethod.GET, entity, Person.class, username);
-        if (person.getBody() == null) {
-            throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-        }
-        Message addedMessage = Message.of(message.getText(), room.getBody(), person.getBody());
-        Message response = this.messageRepository.save(addedMessage);
-        if (response == null) {
-            throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
+    @Transactional
+    public Message addMessage(int roomId, Message message) {
+        Message addedMessage = newMessage(roomId, message);
+        if (writeBehind.isEnabled()) {
+            return writeBehind.accept(addedMessage);
         }
+        Message response = save(addedMessage);
+        announceMessage(response);
         return response;
     }
 
+    /**
+     * Method for inserting new message in the current transaction, bypassing write-behind ingestion.
+     * Nothing is announced, the caller calls announceMessage after the commit.
+     * @param roomId - room ID
+     * @param message - object of Message
+     * @return Created object of Message
+     */
+    public Message insertMessage(int roomId, Message message) {
+        return save(newMessage(roomId, message));
+    }
+
+    /**
+     * Method for announcing created message: the version of history of its room is bumped
+     * and MessageCreatedEvent is published, after the current transaction commits
+     * @param message - created message
+     */
+    public void announceMessage(Message message) {
+        MessageDto created = MessageDto.of(message);
+        Transactions.afterCommit(() -> {
+            versions.bump(ResourceVersionService.room(created.getRoomId()));
+            publisher.publishEvent(new MessageCreatedEvent(created));
+        });
+    }
+
     /**
      * Method for updating message
      * @param message - object of Message
      */
+    @Transactional
     public void updateMessage(Message message) {
         String anchor = UUID.randomUUID().toString();
         var current = messageRepository.findById(message.getId());
@@ -124,46 +238,18 @@ public class MessageService {
             throw new IllegalArgumentException("Message not found. Actual parameters: message ID - " + message.getId() + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
         }
         var buffMessage = current.get();
-        var methods = buffMessage.getClass().getDeclaredMethods();
-        var namePerMethod = new HashMap<String, Method>();
-        for (var method : methods) {
-            var name = method.getName();
-            if (name.startsWith("get") || name.startsWith("set")) {
-                namePerMethod.put(name, method);
-            }
-        }
-        for (var name : namePerMethod.keySet()) {
-            if (name.startsWith("get")) {
-                var getMethod = namePerMethod.get(name);
-                var setMethod = namePerMethod.get(name.replace("get", "set"));
-                if (setMethod == null) {
-                    throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                }
-                Object newValue = null;
-                try {
-                    newValue = getMethod.invoke(message);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                }
-                if (name.equals("getCreated")) {
-                    newValue = new Timestamp(System.currentTimeMillis());
-                }
-                if (newValue != null) {
-                    try {
-                        setMethod.invoke(buffMessage, newValue);
-                    } catch (IllegalAccessException | InvocationTargetException e) {
-                        throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                    }
-                }
-            }
-        }
+        int roomId = buffMessage.getRoom().getId();
+        MERGER.merge(message, buffMessage);
         messageRepository.save(buffMessage);
+        String[] rooms = {ResourceVersionService.room(roomId), ResourceVersionService.room(buffMessage.getRoom().getId())};
+        Transactions.afterCommit(() -> versions.bump(rooms));
     }
 
     /**
      * Method for deleting message
      * @param messageId - message ID
      */
+    @Transactional
     public void deleteMessageById(int messageId) {
         String anchor = UUID.randomUUID().toString();
         Optional<Message> foundMessage = messageRepository.findById(messageId);
@@ -173,5 +259,51 @@ public class MessageService {
         Message message = new Message();
         message.setId(messageId);
         messageRepository.delete(message);
+        String room = ResourceVersionService.room(foundMessage.get().getRoom().getId());
+        Transactions.afterCommit(() -> versions.bump(room));
+    }
+
+    /**
+     * Private method for building request of one page
+     * @param limit - size of page
+     * @return Pageable object
+     */
+    private Pageable pageOf(int limit) {
+        String anchor = UUID.randomUUID().toString();
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid size of page. Actual parameters: limit - " + limit + ", maximum - " + MAX_PAGE_SIZE + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        return PageRequest.of(0, limit);
+    }
+
+    /**
+     * Private method for building new message of the current user
+     * @param roomId - room ID
+     * @param message - object of Message with text
+     * @return new message
+     */
+    private Message newMessage(int roomId, Message message) {
+        String anchor = UUID.randomUUID().toString();
+        if (message.getText() == null) {
+            throw new IllegalArgumentException("Text of message is empty. Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        Room room = resolver.resolveRoom(roomId);
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        Person person = resolver.resolvePerson(username);
+        return Message.of(message.getText(), room, person);
+    }
+
+    /**
+     * Private method for saving new message
+     * @param message - new message
+     * @return saved message
+     */
+    private Message save(Message message) {
+        String anchor = UUID.randomUUID().toString();
+        Message response = this.messageRepository.save(message);
+        if (response == null) {
+            throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        return response;
     }
 }
@@ -0,0 +1,332 @@
+package ru.job4j.chat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.job4j.chat.datasource.ReplicaRoutingDataSource;
+import ru.job4j.chat.event.MessageCreatedEvent;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.MessageDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Optional write-behind ingestion of new messages (chat.message.write-behind.enabled).
+ * Accepted messages get their ID and creation time at once and are put to a bounded queue,
+ * a single writer thread inserts them in JDBC batches. The queue is flushed on shutdown.
+ * A message may be absent from the database for a short time after it is accepted,
+ * MessageCreatedEvent is published only after its row is inserted.
+ * Transient failures are retried, the writer keeps retrying them while it runs.
+ * Rows that still fail are moved to table message_dead_letters (db/update_010.sql).
+ */
+@Component
+@Slf4j
+public class MessageWriteBehind implements SmartLifecycle {
+
+    private static final String INSERT = "insert into messages (id, text, created, room_id, person_id) values (?, ?, ?, ?, ?)";
+
+    /**
+     * How long a request waits for room in the full queue before the message is written synchronously
+     */
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private static final String DEAD_LETTER = "insert into message_dead_letters "
+            + "(id, text, created, room_id, person_id, error) values (?, ?, ?, ?, ?, ?) on conflict (id) do nothing";
+
+    /**
+     * First delay before retry of transient failure, doubled on every attempt
+     */
+    private static final long RETRY_BACKOFF_MS = 100;
+
+    private static final long MAX_RETRY_BACKOFF_MS = 5000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final MessageIdAllocator idAllocator;
+
+    /**
+     * Versions of room histories, bumped after messages are inserted
+     */
+    private final ResourceVersionService versions;
+
+    /**
+     * Publisher of MessageCreatedEvent for inserted messages
+     */
+    private final ApplicationEventPublisher publisher;
+
+    /**
+     * Routing of connections, the author of accepted message reads from the primary
+     * within the read-your-writes window, as after a synchronous write
+     */
+    private final ReplicaRoutingDataSource routing;
+
+    private final boolean enabled;
+
+    /**
+     * Number of attempts of insert with transient failure
+     */
+    private final int retries;
+
+    private final int batchSize;
+
+    private final BlockingQueue<Message> queue;
+
+    private volatile boolean running;
+
+    private Thread writer;
+
+    public MessageWriteBehind(JdbcTemplate jdbcTemplate,
+                              MessageIdAllocator idAllocator,
+                              ResourceVersionService versions,
+                              ApplicationEventPublisher publisher,
+                              ReplicaRoutingDataSource routing,
+                              @Value("${chat.message.write-behind.enabled:false}") boolean enabled,
+                              @Value("${chat.message.write-behind.queue-capacity:10000}") int capacity,
+                              @Value("${chat.message.write-behind.batch-size:500}") int batchSize,
+                              @Value("${chat.message.write-behind.retries:5}") int retries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idAllocator = idAllocator;
+        this.versions = versions;
+        this.publisher = publisher;
+        this.routing = routing;
+        this.enabled = enabled;
+        this.retries = Math.max(1, retries);
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Method for checking whether write-behind ingestion is switched on
+     * @return true if new messages should be passed to accept(Message)
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Method for accepting new message.
+     * When the queue stays full or the writer is stopped, the message is written synchronously
+     * and a failed insert is thrown to the caller.
+     * @param message - object of Message with text, room, person and creation time
+     * @return the same message with assigned ID
+     */
+    public Message accept(Message message) {
+        message.setId(idAllocator.next());
+        routing.rememberWriter();
+        boolean queued = false;
+        if (running) {
+            try {
+                queued = queue.offer(message, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queued) {
+            insert(List.of(message), false);
+            Transactions.afterCommit(() -> inserted(List.of(message)));
+        }
+        return message;
+    }
+
+    /**
+     * Method for getting number of messages waiting for insert
+     * @return size of the queue
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::drain, "message-write-behind");
+        writer.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Message> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            write(rest);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stopped after the web server, so no message is accepted after the final flush
+     * @return phase of lifecycle
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Private method of the writer thread
+     */
+    private void drain() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Private method for inserting messages of the writer in one JDBC batch.
+     * If the batch fails, messages are inserted one by one, so one bad row does not lose the others,
+     * a message that still fails is moved to dead letters.
+     * @param messages - List of messages
+     */
+    private void write(List<Message> messages) {
+        try {
+            insert(messages, true);
+        } catch (DataAccessException e) {
+            if (messages.size() == 1) {
+                deadLetter(messages.get(0), e);
+                return;
+            }
+            for (Message message : messages) {
+                write(List.of(message));
+            }
+            return;
+        }
+        inserted(messages);
+    }
+
+    /**
+     * Private method for inserting messages with retries of transient failures
+     * @param messages - List of messages
+     * @param untilStopped - true if transient failures are retried until the writer is stopped
+     */
+    private void insert(List<Message> messages, boolean untilStopped) {
+        long backoff = RETRY_BACKOFF_MS;
+        for (int attempt = 1;; attempt++) {
+            try {
+                insert(messages);
+                return;
+            } catch (DataAccessException e) {
+                if (!isTransient(e) || attempt >= retries && !(untilStopped && running)) {
+                    throw e;
+                }
+                log.warn("Insert of {} messages failed, attempt {}, retry in {} ms", messages.size(), attempt, backoff, e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = Math.min(MAX_RETRY_BACKOFF_MS, backoff * 2);
+            }
+        }
+    }
+
+    /**
+     * Private method for checking whether the failure may pass on retry
+     * @param e - failure of insert
+     * @return true for lost connections, timeouts, deadlocks and serialization failures
+     */
+    private static boolean isTransient(DataAccessException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException;
+    }
+
+    /**
+     * Private method for keeping message that could not be inserted in table message_dead_letters
+     * @param message - message
+     * @param failure - failure of insert
+     */
+    private void deadLetter(Message message, DataAccessException failure) {
+        String anchor = UUID.randomUUID().toString();
+        try {
+            jdbcTemplate.update(DEAD_LETTER, message.getId(), message.getText(), message.getCreated(),
+                    message.getRoom().getId(), message.getPerson().getId(), String.valueOf(failure.getMostSpecificCause()));
+            log.error("Message is moved to dead letters. Message ID: " + message.getId() + ". Anchor: " + anchor, failure);
+        } catch (DataAccessException e) {
+            log.error("Message is not saved, neither to messages nor to dead letters. Message ID: " + message.getId()
+                    + ", room ID: " + message.getRoom().getId() + ", person ID: " + message.getPerson().getId()
+                    + ", created: " + message.getCreated() + ", text: " + message.getText() + ". Anchor: " + anchor, e);
+        }
+    }
+
+    /**
+     * Private method for announcing inserted messages: versions of histories of their rooms are bumped
+     * and MessageCreatedEvent is published
+     * @param messages - inserted messages
+     */
+    private void inserted(List<Message> messages) {
+        try {
+            versions.bump(messages.stream()
+                    .map(message -> ResourceVersionService.room(message.getRoom().getId()))
+                    .collect(Collectors.toList()));
+        } catch (DataAccessException e) {
+            String anchor = UUID.randomUUID().toString();
+            log.error("Versions of rooms are not bumped. Anchor: " + anchor, e);
+        }
+        for (Message message : messages) {
+            try {
+                publisher.publishEvent(new MessageCreatedEvent(MessageDto.of(message)));
+            } catch (RuntimeException e) {
+                String anchor = UUID.randomUUID().toString();
+                log.error("Event of inserted message is not published. Message ID: " + message.getId() + ". Anchor: " + anchor, e);
+            }
+        }
+    }
+
+    /**
+     * Private method for executing batch insert
+     * @param messages - List of messages
+     */
+    private void insert(List<Message> messages) {
+        jdbcTemplate.batchUpdate(INSERT, messages, messages.size(), (ps, message) -> {
+            ps.setInt(1, message.getId());
+            ps.setString(2, message.getText());
+            ps.setTimestamp(3, message.getCreated());
+            ps.setInt(4, message.getRoom().getId());
+            ps.setInt(5, message.getPerson().getId());
+        });
+    }
+}
@@ -0,0 +1,132 @@
+package ru.job4j.chat.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+/**
+ * Partial update (PATCH) of objects: non-null properties of source are copied to target.
+ * Getter and setter pairs of the class are found once and kept as MethodHandles,
+ * so applying an update does no reflection lookups.
+ * @param <T> - type of object
+ */
+public class PatchMerger<T> {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /**
+     * Copied properties of the class
+     */
+    private final List<Property> properties;
+
+    private PatchMerger(Class<T> type, Map<String, UnaryOperator<Object>> transforms) {
+        Map<String, Method> setters = new HashMap<>();
+        List<Method> getters = new ArrayList<>();
+        for (Method method : type.getDeclaredMethods()) {
+            if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            String name = method.getName();
+            if (name.startsWith("get") && name.length() > 3 && method.getParameterCount() == 0) {
+                getters.add(method);
+            } else if (name.startsWith("set") && name.length() > 3 && method.getParameterCount() == 1) {
+                setters.put(name.substring(3), method);
+            }
+        }
+        List<Property> found = new ArrayList<>();
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (Method getter : getters) {
+            String suffix = getter.getName().substring(3);
+            Method setter = setters.get(suffix);
+            if (setter == null || !setter.getParameterTypes()[0].equals(getter.getReturnType())) {
+                continue;
+            }
+            String property = Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+            try {
+                found.add(new Property(
+                        lookup.unreflect(getter).asType(GETTER_TYPE),
+                        lookup.unreflect(setter).asType(SETTER_TYPE),
+                        transforms.get(property)
+                ));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Property is not accessible: " + type.getName() + "." + property, e);
+            }
+        }
+        this.properties = Collections.unmodifiableList(found);
+    }
+
+    /**
+     * Method for creating merger that copies properties as they are
+     * @param type - class of object
+     * @param <T> - type of object
+     * @return PatchMerger object
+     */
+    public static <T> PatchMerger<T> of(Class<T> type) {
+        return new PatchMerger<>(type, Map.of());
+    }
+
+    /**
+     * Method for creating merger with transformations of some properties.
+     * A transformation gets the value of source (may be null), its result is copied if it is not null.
+     * @param type - class of object
+     * @param transforms - transformations by name of property
+     * @param <T> - type of object
+     * @return PatchMerger object
+     */
+    public static <T> PatchMerger<T> of(Class<T> type, Map<String, UnaryOperator<Object>> transforms) {
+        return new PatchMerger<>(type, transforms);
+    }
+
+    /**
+     * Method for copying non-null properties of source to target
+     * @param source - object with new values
+     * @param target - updated object
+     */
+    public void merge(T source, T target) {
+        for (Property property : properties) {
+            try {
+                Object value = property.getter.invokeExact((Object) source);
+                if (property.transform != null) {
+                    value = property.transform.apply(value);
+                }
+                if (value != null) {
+                    property.setter.invokeExact((Object) target, value);
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                String anchor = UUID.randomUUID().toString();
+                throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
+            }
+        }
+    }
+
+    /**
+     * Getter and setter of one property
+     */
+    private static class Property {
+
+        private final MethodHandle getter;
+
+        private final MethodHandle setter;
+
+        private final UnaryOperator<Object> transform;
+
+        Property(MethodHandle getter, MethodHandle setter, UnaryOperator<Object> transform) {
+            this.getter = getter;
+            this.setter = setter;
+            this.transform = transform;
+        }
+    }
+}
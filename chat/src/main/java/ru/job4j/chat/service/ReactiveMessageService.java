@@ -0,0 +1,158 @@
+package ru.job4j.chat.service;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import ru.job4j.chat.event.MessageCreatedEvent;
+import ru.job4j.chat.model.MessageDto;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Non-blocking reads of room history over R2DBC and live updates of rooms.
+ * History rows are fetched from a database cursor chat.reactive.fetch-size rows at a time
+ * as the subscriber requests them, so a slow reader holds neither a thread nor the whole history.
+ * Every live subscriber has its own buffer of chat.reactive.live-buffer messages,
+ * a reader that falls behind it gets an error and resumes with the ID of its last message.
+ * IDs are allocated in pools per instance, so they do not follow the order of creation across instances.
+ */
+@Service
+@Slf4j
+public class ReactiveMessageService {
+
+    private static final String SELECT = "select m.id, m.text, m.created, r.id as room_id, r.name as room_name, "
+            + "p.id as person_id, p.username "
+            + "from messages m join rooms r on r.id = m.room_id join persons p on p.id = m.person_id "
+            + "where m.room_id = :room ";
+
+    private static final String HISTORY = SELECT
+            + "order by m.created, m.id";
+
+    private static final String HISTORY_AFTER = SELECT
+            + "and (m.created, m.id) > (select c.created, c.id from messages c where c.id = :after and c.room_id = :room) "
+            + "order by m.created, m.id";
+
+    private final DatabaseClient databaseClient;
+
+    private final int fetchSize;
+
+    private final int liveBuffer;
+
+    /**
+     * Age of history messages whose live events may still arrive after the tail started, in milliseconds
+     */
+    private final long dedupWindow;
+
+    /**
+     * Live subscribers by room ID
+     */
+    private final Map<Integer, Set<Sinks.Many<MessageDto>>> subscribers = new ConcurrentHashMap<>();
+
+    public ReactiveMessageService(ConnectionFactory connectionFactory,
+                                  @Value("${chat.reactive.fetch-size:100}") int fetchSize,
+                                  @Value("${chat.reactive.live-buffer:256}") int liveBuffer,
+                                  @Value("${chat.reactive.dedup-window:300000}") long dedupWindow) {
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+        this.fetchSize = fetchSize;
+        this.liveBuffer = liveBuffer;
+        this.dedupWindow = dedupWindow;
+    }
+
+    /**
+     * Method for reading room history, oldest first
+     * @param roomId - room ID
+     * @param after - ID of the last message seen by client, whole history when null
+     * @return Flux of messages
+     */
+    public Flux<MessageDto> history(int roomId, Integer after) {
+        DatabaseClient.GenericExecuteSpec spec = after == null
+                ? databaseClient.sql(HISTORY)
+                : databaseClient.sql(HISTORY_AFTER).bind("after", after);
+        return spec.bind("room", roomId)
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(ReactiveMessageService::toDto)
+                .all();
+    }
+
+    /**
+     * Method for tailing the room: history after the given message, then new messages as they are created.
+     * The live subscription starts before the history is read, so no message is lost in between.
+     * A live message is skipped when the history has already emitted its ID. Only IDs of history messages
+     * created within chat.reactive.dedup-window before the start are remembered: events of older messages
+     * were published before the subscription, unless write-behind held them longer, then a message may repeat.
+     * @param roomId - room ID
+     * @param after - ID of the last message seen by client, whole history when null
+     * @return endless Flux of messages
+     */
+    public Flux<MessageDto> tail(int roomId, Integer after) {
+        return Flux.defer(() -> {
+            Sinks.Many<MessageDto> sink = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<MessageDto>get(liveBuffer).get());
+            Set<Sinks.Many<MessageDto>> roomSubscribers = subscribers.computeIfAbsent(
+                    roomId, id -> ConcurrentHashMap.newKeySet()
+            );
+            roomSubscribers.add(sink);
+            long since = System.currentTimeMillis() - dedupWindow;
+            Set<Integer> emitted = ConcurrentHashMap.newKeySet();
+            return history(roomId, after)
+                    .doOnNext(message -> {
+                        if (message.getCreated() == null || message.getCreated().getTime() >= since) {
+                            emitted.add(message.getId());
+                        }
+                    })
+                    .concatWith(sink.asFlux().filter(message -> !emitted.remove(message.getId())))
+                    .doFinally(signal -> roomSubscribers.remove(sink));
+        });
+    }
+
+    /**
+     * Method for passing new message to live subscribers of its room.
+     * A subscriber whose buffer is full is completed with an error.
+     * @param event - event of created message
+     */
+    @EventListener
+    public void onMessageCreated(MessageCreatedEvent event) {
+        Set<Sinks.Many<MessageDto>> roomSubscribers = subscribers.get(event.getRoomId());
+        if (roomSubscribers == null) {
+            return;
+        }
+        for (Sinks.Many<MessageDto> sink : roomSubscribers) {
+            Sinks.EmitResult result;
+            synchronized (sink) {
+                result = sink.tryEmitNext(event.getMessage());
+                if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+                    sink.tryEmitError(new IllegalStateException("Reader is too slow, resume from the last received message"));
+                }
+            }
+            if (result.isFailure() && result != Sinks.EmitResult.FAIL_TERMINATED) {
+                log.debug("Live message {} was not passed to subscriber: {}", event.getMessage().getId(), result);
+            }
+        }
+    }
+
+    /**
+     * Private method for building DTO of row
+     * @param row - row of result
+     * @return MessageDto object
+     */
+    private static MessageDto toDto(Row row) {
+        LocalDateTime created = row.get("created", LocalDateTime.class);
+        return new MessageDto(
+                row.get("id", Integer.class), row.get("text", String.class),
+                created == null ? null : Timestamp.valueOf(created),
+                row.get("room_id", Integer.class), row.get("room_name", String.class),
+                row.get("person_id", Integer.class), row.get("username", String.class)
+        );
+    }
+}
@@ -0,0 +1,323 @@
+package ru.job4j.chat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGStatement;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import ru.job4j.chat.event.MessageCreatedEvent;
+import ru.job4j.chat.event.MessagesArchivedEvent;
+import ru.job4j.chat.model.MessageDto;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.model.RoomUnreadDto;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Logic for read cursors (the last message read by person in room) and unread counters.
+ * Cursors and counters live in memory and are updated on every new message.
+ * Changed cursors are written to table read_cursors (db/update_005.sql) in periodic batches
+ * (chat.read-cursor.flush-interval) and on shutdown. On startup cursors are loaded,
+ * unread counters of cursors are counted again from messages after the cursor,
+ * and numbers of messages of rooms are read from room_message_counts (db/update_011.sql), kept by triggers.
+ */
+@Service
+@Slf4j
+public class ReadCursorService implements SmartLifecycle {
+
+    private static final String LOAD_TOTALS = "select room_id, total from room_message_counts";
+
+    private static final String LOAD_CURSORS = "select c.person_id, c.room_id, c.last_read_id, c.last_read_created, count(m.id) "
+            + "from read_cursors c left join messages m on m.room_id = c.room_id "
+            + "and (m.created, m.id) > (c.last_read_created, c.last_read_id) "
+            + "group by c.person_id, c.room_id, c.last_read_id, c.last_read_created";
+
+    private static final String COUNT_AFTER = "select m.created, (select count(*) from messages n "
+            + "where n.room_id = m.room_id and (n.created, n.id) > (m.created, m.id)) "
+            + "from messages m where m.room_id = ? and m.id = ?";
+
+    private static final String COUNT_ALL = "select count(*) from messages where room_id = ?";
+
+    private static final String UPSERT = "insert into read_cursors (person_id, room_id, last_read_id, last_read_created) "
+            + "values (?, ?, ?, ?) on conflict (person_id, room_id) "
+            + "do update set last_read_id = excluded.last_read_id, last_read_created = excluded.last_read_created";
+
+    /**
+     * Creation time of the cursor that has read nothing, stored as -infinity and older than every message
+     */
+    private static final Timestamp NOTHING_READ = new Timestamp(PGStatement.DATE_NEGATIVE_INFINITY);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final RoomService roomService;
+
+    private final EntityResolver resolver;
+
+    /**
+     * Number of messages by room ID, unread counter of persons without cursor in the room
+     */
+    private final ConcurrentMap<Integer, AtomicInteger> totals = new ConcurrentHashMap<>();
+
+    /**
+     * Cursors by room ID and person ID
+     */
+    private final ConcurrentMap<Integer, ConcurrentMap<Integer, ReadCursor>> cursors = new ConcurrentHashMap<>();
+
+    /**
+     * Cursors changed since the last flush
+     */
+    private final Set<ReadCursor> dirty = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running;
+
+    public ReadCursorService(JdbcTemplate jdbcTemplate, RoomService roomService, EntityResolver resolver) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.roomService = roomService;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Method for getting all rooms with cursor and unread counter of the current user.
+     * Rooms are loaded by one query, cursors and counters are taken from memory.
+     * @return List of rooms
+     */
+    public List<RoomUnreadDto> findRoomsWithUnread() {
+        int personId = currentPerson().getId();
+        return roomService.findAllRooms().stream()
+                .map(room -> {
+                    ReadCursor cursor = cursorsOf(room.getId()).get(personId);
+                    if (cursor == null) {
+                        return new RoomUnreadDto(room.getId(), room.getName(), 0, total(room.getId()).get());
+                    }
+                    synchronized (cursor) {
+                        return new RoomUnreadDto(room.getId(), room.getName(), cursor.lastReadId, cursor.unread);
+                    }
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Method for moving read cursor of the current user in the room.
+     * Message IDs do not follow creation order, so unread messages are the messages after (created, id)
+     * of the last read message.
+     * @param roomId - room ID
+     * @param lastReadId - ID of the last read message, 0 to mark the whole room as unread
+     * @return room with cursor and unread counter
+     */
+    public RoomUnreadDto markRead(int roomId, int lastReadId) {
+        String anchor = UUID.randomUUID().toString();
+        if (lastReadId < 0) {
+            throw new IllegalArgumentException("Invalid ID of the last read message. Actual parameters: lastReadId - " + lastReadId + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        Room room = resolver.resolveRoom(roomId);
+        int personId = currentPerson().getId();
+        Timestamp lastReadCreated = NOTHING_READ;
+        Integer unread;
+        if (lastReadId == 0) {
+            unread = jdbcTemplate.queryForObject(COUNT_ALL, Integer.class, roomId);
+        } else {
+            List<Object[]> rows = jdbcTemplate.query(COUNT_AFTER,
+                    (rs, rowNum) -> new Object[] {rs.getTimestamp(1), rs.getInt(2)}, roomId, lastReadId);
+            if (rows.isEmpty()) {
+                throw new IllegalArgumentException("Message not found in the room. Actual parameters: roomId - " + roomId + ", lastReadId - " + lastReadId + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+            }
+            lastReadCreated = (Timestamp) rows.get(0)[0];
+            unread = (Integer) rows.get(0)[1];
+        }
+        if (unread == null) {
+            throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        ReadCursor cursor = cursorsOf(roomId).computeIfAbsent(personId, id -> new ReadCursor(id, roomId));
+        synchronized (cursor) {
+            cursor.lastReadId = lastReadId;
+            cursor.lastReadCreated = lastReadCreated;
+            cursor.unread = unread;
+        }
+        dirty.add(cursor);
+        return new RoomUnreadDto(room.getId(), room.getName(), lastReadId, unread);
+    }
+
+    /**
+     * Method for counting new message.
+     * Cursor of the author moves to the message, other cursors of the room get one more unread message.
+     * @param event - event of created message
+     */
+    @EventListener
+    public void onMessageCreated(MessageCreatedEvent event) {
+        MessageDto message = event.getMessage();
+        total(message.getRoomId()).incrementAndGet();
+        ConcurrentMap<Integer, ReadCursor> roomCursors = cursorsOf(message.getRoomId());
+        roomCursors.computeIfAbsent(message.getPersonId(), id -> new ReadCursor(id, message.getRoomId()));
+        for (ReadCursor cursor : roomCursors.values()) {
+            synchronized (cursor) {
+                if (!cursor.isBefore(message)) {
+                    continue;
+                }
+                if (cursor.personId == message.getPersonId()) {
+                    cursor.lastReadId = message.getId();
+                    cursor.lastReadCreated = message.getCreated();
+                    cursor.unread = 0;
+                    dirty.add(cursor);
+                } else {
+                    cursor.unread++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method for removing archived messages from counters.
+     * Archived messages are the oldest of the room, so the remaining messages of the room are all unread
+     * for a cursor that had more unread messages than the room has now.
+     * @param event - event of archived messages
+     */
+    @EventListener
+    public void onMessagesArchived(MessagesArchivedEvent event) {
+        int total = total(event.getRoomId()).updateAndGet(current -> Math.max(0, current - event.getCount()));
+        for (ReadCursor cursor : cursorsOf(event.getRoomId()).values()) {
+            synchronized (cursor) {
+                cursor.unread = Math.min(cursor.unread, total);
+            }
+        }
+    }
+
+    /**
+     * Method for writing changed cursors to the database in one batch.
+     * Cursors are put back to the changed set when the batch fails.
+     */
+    @Scheduled(fixedDelayString = "${chat.read-cursor.flush-interval:5000}")
+    public void flush() {
+        List<ReadCursor> batch = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (Iterator<ReadCursor> it = dirty.iterator(); it.hasNext();) {
+            ReadCursor cursor = it.next();
+            it.remove();
+            batch.add(cursor);
+            synchronized (cursor) {
+                rows.add(new Object[] {cursor.personId, cursor.roomId, cursor.lastReadId, cursor.lastReadCreated});
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPSERT, rows);
+        } catch (DataAccessException e) {
+            log.error("Read cursors were not saved, next attempt with the next flush. Cursors: {}", rows.size(), e);
+            dirty.addAll(batch);
+        }
+    }
+
+    /**
+     * Method for loading counters and cursors from the database
+     */
+    @Override
+    public void start() {
+        jdbcTemplate.query(LOAD_TOTALS, rs -> {
+            total(rs.getInt(1)).set(rs.getInt(2));
+        });
+        jdbcTemplate.query(LOAD_CURSORS, rs -> {
+            ReadCursor cursor = new ReadCursor(rs.getInt(1), rs.getInt(2));
+            cursor.lastReadId = rs.getInt(3);
+            cursor.lastReadCreated = rs.getTimestamp(4);
+            cursor.unread = rs.getInt(5);
+            cursorsOf(cursor.roomId).put(cursor.personId, cursor);
+        });
+        running = true;
+    }
+
+    /**
+     * Method for writing changed cursors on shutdown
+     */
+    @Override
+    public void stop() {
+        running = false;
+        flush();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Counters must be loaded before the web server accepts requests
+     * @return phase of lifecycle
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Private method for getting cursors of the room
+     * @param roomId - room ID
+     * @return cursors by person ID
+     */
+    private ConcurrentMap<Integer, ReadCursor> cursorsOf(int roomId) {
+        return cursors.computeIfAbsent(roomId, id -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Private method for getting number of messages of the room
+     * @param roomId - room ID
+     * @return counter
+     */
+    private AtomicInteger total(int roomId) {
+        return totals.computeIfAbsent(roomId, id -> new AtomicInteger());
+    }
+
+    /**
+     * Private method for getting Person of the current request
+     * @return Person object
+     */
+    private Person currentPerson() {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        return resolver.resolvePerson(username);
+    }
+
+    /**
+     * Read cursor of person in room, guarded by its own monitor
+     */
+    private static final class ReadCursor {
+
+        private final int personId;
+
+        private final int roomId;
+
+        private int lastReadId;
+
+        private Timestamp lastReadCreated = NOTHING_READ;
+
+        private int unread;
+
+        private ReadCursor(int personId, int roomId) {
+            this.personId = personId;
+            this.roomId = roomId;
+        }
+
+        /**
+         * Method for checking that the message is after the cursor by (created, id)
+         * @param message - message of the room
+         * @return true if the message is not read yet
+         */
+        private boolean isBefore(MessageDto message) {
+            int byCreated = message.getCreated().compareTo(lastReadCreated);
+            return byCreated > 0 || byCreated == 0 && message.getId() > lastReadId;
+        }
+    }
+}
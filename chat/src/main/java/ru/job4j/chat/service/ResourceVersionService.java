@@ -0,0 +1,234 @@
+package ru.job4j.chat.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.WebRequest;
+import ru.job4j.chat.event.ClusterEventBus;
+import ru.job4j.chat.event.ClusterResyncEvent;
+import ru.job4j.chat.event.ResourceVersionEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Versions of cached resources for ETags: catalogs of rooms and roles and history of every room.
+ * Versions are kept in table resource_versions (db/update_009.sql) and bumped by write methods of services
+ * after the change is committed. Every instance keeps a copy of versions in memory,
+ * updated by its own bumps and by notifications of other instances, so conditional requests
+ * are answered without queries. While notifications may be missed, versions are read from the database.
+ * With read replicas a version gets an ETag only after replicas had time to catch up with its change,
+ * so an ETag is never given to a response read from a replica that has not seen the change yet.
+ * Every bump costs one upsert of resource_versions and one NOTIFY per changed resource, so every new message
+ * adds a write of the version row of its room; batch writes bump all their rooms with one statement.
+ */
+@Service
+public class ResourceVersionService {
+
+    /**
+     * Catalog of rooms
+     */
+    public static final String ROOMS = "rooms";
+
+    /**
+     * Catalog of roles
+     */
+    public static final String ROLES = "roles";
+
+    /**
+     * Prefix of history of room
+     */
+    public static final String ROOM_PREFIX = "room:";
+
+    private static final String BUMP = "insert into resource_versions (resource, version) values %s "
+            + "on conflict (resource) do update set version = resource_versions.version + 1 "
+            + "returning resource, version";
+
+    private static final String BUMP_ALL = "update resource_versions set version = version + 1 "
+            + "where resource like ? returning resource, version";
+
+    private static final String FIND = "select version from resource_versions where resource = ?";
+
+    private static final String FIND_ALL = "select resource, version from resource_versions";
+
+    private static final String ROOMS_OF_PERSON = "select distinct room_id from messages where person_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ClusterEventBus bus;
+
+    /**
+     * Time after change of version when all healthy replicas have the change, in milliseconds
+     */
+    private final long settleTime;
+
+    /**
+     * Known versions by resource, resources that were never changed are absent
+     */
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+
+    public ResourceVersionService(JdbcTemplate jdbcTemplate,
+                                  ClusterEventBus bus,
+                                  @Value("${chat.datasource.replicas:}") List<String> replicas,
+                                  @Value("${chat.datasource.replica-max-lag:10}") double maxLag,
+                                  @Value("${chat.datasource.replica-check-interval:5000}") long checkInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bus = bus;
+        this.settleTime = replicas.isEmpty() ? 0 : (long) (maxLag * 1000) + checkInterval;
+    }
+
+    /**
+     * Method for getting name of resource of room history
+     * @param roomId - room ID
+     * @return name of resource
+     */
+    public static String room(int roomId) {
+        return ROOM_PREFIX + roomId;
+    }
+
+    /**
+     * Method for building strong ETag of the response to the request.
+     * The ETag depends on version of resource, Accept header and parameters of the request.
+     * @param resource - name of resource
+     * @param request - current request
+     * @return ETag, or null if the response must not get one now
+     */
+    public String etag(String resource, WebRequest request) {
+        long version;
+        if (bus.isListening()) {
+            Version current = versions.get(resource);
+            if (current != null && System.currentTimeMillis() - current.changedAt < settleTime) {
+                return null;
+            }
+            version = current == null ? 0 : current.value;
+        } else if (settleTime == 0) {
+            List<Long> found = jdbcTemplate.queryForList(FIND, Long.class, resource);
+            version = found.isEmpty() ? 0 : found.get(0);
+        } else {
+            return null;
+        }
+        StringBuilder variant = new StringBuilder(String.valueOf(request.getHeader(HttpHeaders.ACCEPT)));
+        new TreeMap<>(request.getParameterMap()).forEach(
+                (name, values) -> variant.append('&').append(name).append('=').append(String.join(",", values))
+        );
+        return resource + "." + version + "." + digest(variant.toString());
+    }
+
+    /**
+     * Private method for getting SHA-256 digest of variant of response,
+     * so different parameters never share an ETag
+     * @param variant - Accept header and parameters of request
+     * @return digest encoded to URL-safe Base64
+     */
+    private static String digest(String variant) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(sha.digest(variant.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Method for bumping versions of changed resources, called after the change is committed
+     * @param resources - names of resources
+     */
+    public void bump(String... resources) {
+        bump(Arrays.asList(resources));
+    }
+
+    /**
+     * Method for bumping versions of changed resources, called after the change is committed
+     * @param resources - names of resources
+     */
+    public void bump(Collection<String> resources) {
+        List<String> distinct = resources.stream().distinct().collect(Collectors.toList());
+        if (distinct.isEmpty()) {
+            return;
+        }
+        String values = String.join(", ", Collections.nCopies(distinct.size(), "(?, 1)"));
+        jdbcTemplate.query(String.format(BUMP, values), (RowCallbackHandler) rs -> advance(
+                rs.getString("resource"), rs.getLong("version")
+        ), distinct.toArray());
+    }
+
+    /**
+     * Method for bumping versions of all known resources with the prefix, e.g. history of all rooms
+     * @param prefix - prefix of names of resources
+     */
+    public void bumpAll(String prefix) {
+        jdbcTemplate.query(BUMP_ALL, (RowCallbackHandler) rs -> advance(
+                rs.getString("resource"), rs.getLong("version")
+        ), prefix + "%");
+    }
+
+    /**
+     * Method for getting resources of histories of rooms where the person has messages
+     * @param personId - person ID
+     * @return names of resources
+     */
+    public List<String> roomsOfPerson(int personId) {
+        return jdbcTemplate.queryForList(ROOMS_OF_PERSON, Integer.class, personId).stream()
+                .map(ResourceVersionService::room)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Method for taking version bumped by another instance
+     * @param event - event of changed version
+     */
+    @EventListener
+    public void onVersionChanged(ResourceVersionEvent event) {
+        advance(event.getResource(), event.getVersion());
+    }
+
+    /**
+     * Method for reloading versions when notifications could have been missed
+     * @param event - event of connected listener
+     */
+    @EventListener
+    public void onResync(ClusterResyncEvent event) {
+        jdbcTemplate.query(FIND_ALL, (RowCallbackHandler) rs -> advance(
+                rs.getString("resource"), rs.getLong("version")
+        ));
+    }
+
+    /**
+     * Private method for moving known version of resource forward, older versions are ignored
+     * @param resource - name of resource
+     * @param version - version
+     */
+    private void advance(String resource, long version) {
+        versions.compute(resource, (key, current) -> current != null && current.value >= version
+                ? current
+                : new Version(version, System.currentTimeMillis()));
+    }
+
+    /**
+     * Version of resource with the time it became known to this instance
+     */
+    private static final class Version {
+
+        private final long value;
+
+        private final long changedAt;
+
+        private Version(long value, long changedAt) {
+            this.value = value;
+            this.changedAt = changedAt;
+        }
+    }
+}
@@ -3,12 +3,12 @@ package ru.job4j.chat.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.job4j.chat.model.Role;
 import ru.job4j.chat.repository.RoleRepository;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -22,15 +22,37 @@ import java.util.stream.StreamSupport;
 @Slf4j
 @RequiredArgsConstructor
 public class RoleService {
+
+    /**
+     * Partial update of roles
+     */
+    private static final PatchMerger<Role> MERGER = PatchMerger.of(Role.class);
+
     /**
      * DAO for Role models
      */
     private final RoleRepository roleRepository;
 
+    /**
+     * In-process lookup of persons with their roles, evicted on change of role
+     */
+    private final EntityResolver resolver;
+
+    /**
+     * Roles are kept in the second-level cache, changed roles are evicted from it
+     */
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Version of the role catalog for ETags
+     */
+    private final ResourceVersionService versions;
+
     /**
      * Method for finding all roles
      * @return List of roles
      */
+    @Transactional(readOnly = true)
     public List<Role> findAllRoles() {
         String anchor = UUID.randomUUID().toString();
         List<Role> roleList = StreamSupport.stream(
@@ -47,6 +69,7 @@ public class RoleService {
      * @param roleId - role ID
      * @return object of Role
      */
+    @Transactional(readOnly = true)
     public Role findRoleById(int roleId) {
         String anchor = UUID.randomUUID().toString();
         Optional<Role> role = roleRepository.findById(roleId);
@@ -70,6 +93,7 @@ public class RoleService {
         if (addedRole == null) {
             throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
         }
+        versions.bump(ResourceVersionService.ROLES);
         return addedRole;
     }
 
@@ -84,37 +108,11 @@ public class RoleService {
             throw new IllegalArgumentException("Role not found. Actual parameters: role ID - " + role.getId() + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
         }
         var buffRole = currentRole.get();
-        var methods = buffRole.getClass().getDeclaredMethods();
-        var namePerMethod = new HashMap<String, Method>();
-        for (var method : methods) {
-            var name = method.getName();
-            if (name.startsWith("get") || name.startsWith("set")) {
-                namePerMethod.put(name, method);
-            }
-        }
-        for (var name : namePerMethod.keySet()) {
-            if (name.startsWith("get")) {
-                var getMethod = namePerMethod.get(name);
-                var setMethod = namePerMethod.get(name.replace("get", "set"));
-                if (setMethod == null) {
-                    throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                }
-                Object newValue = null;
-                try {
-                    newValue = getMethod.invoke(role);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                }
-                if (newValue != null) {
-                    try {
-                        setMethod.invoke(buffRole, newValue);
-                    } catch (IllegalAccessException | InvocationTargetException e) {
-                        throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                    }
-                }
-            }
-        }
+        MERGER.merge(role, buffRole);
         roleRepository.save(buffRole);
+        secondLevelCache().evict(Role.class, buffRole.getId());
+        resolver.evictRole(buffRole.getId());
+        versions.bump(ResourceVersionService.ROLES);
     }
 
     /**
@@ -130,6 +128,16 @@ public class RoleService {
         Role role = new Role();
         role.setId(roleId);
         roleRepository.delete(role);
+        secondLevelCache().evict(Role.class, roleId);
+        resolver.evictRole(roleId);
+        versions.bump(ResourceVersionService.ROLES);
     }
 
+    /**
+     * Private method for getting the second-level cache
+     * @return Cache object
+     */
+    private Cache secondLevelCache() {
+        return entityManagerFactory.getCache();
+    }
 }
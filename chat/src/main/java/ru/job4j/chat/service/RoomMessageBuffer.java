@@ -0,0 +1,108 @@
+package ru.job4j.chat.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.job4j.chat.model.MessageDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded in-memory buffer of recent messages per room.
+ * Used for catch-up of reconnecting event stream clients without querying the database.
+ */
+@Component
+public class RoomMessageBuffer {
+
+    /**
+     * Maximum number of messages kept per room
+     */
+    private final int capacity;
+
+    /**
+     * Ring of recent messages by room ID
+     */
+    private final Map<Integer, Ring> rings = new ConcurrentHashMap<>();
+
+    public RoomMessageBuffer(@Value("${chat.sse.buffer-capacity:100}") int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity of buffer must be positive. Actual value: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Method for adding new message of the room, the oldest message is dropped when the ring is full
+     * @param roomId - room ID
+     * @param message - message
+     */
+    public void add(int roomId, MessageDto message) {
+        rings.computeIfAbsent(roomId, id -> new Ring(capacity)).add(message);
+    }
+
+    /**
+     * Method for getting messages of the room added after the given message, in order of adding
+     * @param roomId - room ID
+     * @param lastId - ID of the last message seen by client
+     * @return List of messages, or empty optional if the message is no longer in the buffer
+     */
+    public Optional<List<MessageDto>> after(int roomId, int lastId) {
+        Ring ring = rings.get(roomId);
+        return ring == null ? Optional.empty() : ring.after(lastId);
+    }
+
+    /**
+     * Method for removing buffered messages of the room
+     * @param roomId - room ID
+     */
+    public void clear(int roomId) {
+        rings.remove(roomId);
+    }
+
+    /**
+     * Fixed-size ring of messages of one room
+     */
+    private static class Ring {
+
+        private final MessageDto[] slots;
+
+        /**
+         * Index of the slot for the next message
+         */
+        private int next;
+
+        /**
+         * Number of occupied slots
+         */
+        private int size;
+
+        Ring(int capacity) {
+            this.slots = new MessageDto[capacity];
+        }
+
+        synchronized void add(MessageDto message) {
+            slots[next] = message;
+            next = (next + 1) % slots.length;
+            if (size < slots.length) {
+                size++;
+            }
+        }
+
+        synchronized Optional<List<MessageDto>> after(int lastId) {
+            int first = (next - size + slots.length) % slots.length;
+            for (int i = 0; i < size; i++) {
+                if (slots[(first + i) % slots.length].getId() == lastId) {
+                    List<MessageDto> result = new ArrayList<>(size - i - 1);
+                    for (int j = i + 1; j < size; j++) {
+                        result.add(slots[(first + j) % slots.length]);
+                    }
+                    return Optional.of(result);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+}
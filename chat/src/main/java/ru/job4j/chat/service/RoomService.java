@@ -3,12 +3,12 @@ package ru.job4j.chat.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.job4j.chat.model.Room;
 import ru.job4j.chat.repository.RoomRepository;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -22,15 +22,32 @@ import java.util.stream.StreamSupport;
 @Slf4j
 @RequiredArgsConstructor
 public class RoomService {
+
+    /**
+     * Partial update of rooms
+     */
+    private static final PatchMerger<Room> MERGER = PatchMerger.of(Room.class);
+
     /**
      * DAO for models of Room
      */
     private final RoomRepository roomRepository;
 
+    /**
+     * Rooms are kept in the second-level cache, changed rooms are evicted from it
+     */
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Versions of the room catalog and room histories for ETags
+     */
+    private final ResourceVersionService versions;
+
     /**
      * Method for getting all available Rooms
      * @return List of rooms
      */
+    @Transactional(readOnly = true)
     public List<Room> findAllRooms() {
         String anchor = UUID.randomUUID().toString();
         List<Room> roomList = StreamSupport.stream(
@@ -47,6 +64,7 @@ public class RoomService {
      * @param roomId - room ID
      * @return object of Room
      */
+    @Transactional(readOnly = true)
     public Room findRoomById(int roomId) {
         String anchor = UUID.randomUUID().toString();
         Optional<Room> room = roomRepository.findById(roomId);
@@ -70,6 +88,7 @@ public class RoomService {
         if (addedRoom == null) {
             throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
         }
+        versions.bump(ResourceVersionService.ROOMS, ResourceVersionService.room(addedRoom.getId()));
         return addedRoom;
     }
 
@@ -84,37 +103,10 @@ public class RoomService {
             throw new IllegalArgumentException("Room not found. Actual parameters: room ID - " + room.getId() + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
         }
         var tempRoom = currentRoom.get();
-        var methods = tempRoom.getClass().getDeclaredMethods();
-        var namePerMethod = new HashMap<String, Method>();
-        for (var method : methods) {
-            var name = method.getName();
-            if (name.startsWith("get") || name.startsWith("set")) {
-                namePerMethod.put(name, method);
-            }
-        }
-        for (var name : namePerMethod.keySet()) {
-            if (name.startsWith("get")) {
-                var getMethod = namePerMethod.get(name);
-                var setMethod = namePerMethod.get(name.replace("get", "set"));
-                if (setMethod == null) {
-                    throw new NullPointerException("Invalid properties");
-                }
-                Object newValue = null;
-                try {
-                    newValue = getMethod.invoke(room);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                }
-                if (newValue != null) {
-                    try {
-                        setMethod.invoke(tempRoom, newValue);
-                    } catch (IllegalAccessException | InvocationTargetException e) {
-                        throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                    }
-                }
-            }
-        }
+        MERGER.merge(room, tempRoom);
         roomRepository.save(tempRoom);
+        secondLevelCache().evict(Room.class, tempRoom.getId());
+        versions.bump(ResourceVersionService.ROOMS, ResourceVersionService.room(tempRoom.getId()));
     }
 
     /**
@@ -130,5 +122,15 @@ public class RoomService {
         Room room = new Room();
         room.setId(roomId);
         roomRepository.delete(room);
+        secondLevelCache().evict(Room.class, roomId);
+        versions.bump(ResourceVersionService.ROOMS, ResourceVersionService.room(roomId));
+    }
+
+    /**
+     * Private method for getting the second-level cache
+     * @return Cache object
+     */
+    private Cache secondLevelCache() {
+        return entityManagerFactory.getCache();
     }
 }
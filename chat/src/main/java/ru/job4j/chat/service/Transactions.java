@@ -0,0 +1,31 @@
+package ru.job4j.chat.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Actions of services that must see committed changes: bumps of versions and events of new messages
+ */
+final class Transactions {
+
+    private Transactions() {
+    }
+
+    /**
+     * Method for running action after the current transaction commits, or at once outside of a transaction.
+     * The action does not run when the transaction rolls back.
+     * @param action - action
+     */
+    static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,21 +1,15 @@
 package ru.job4j.chat.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
 import ru.job4j.chat.model.Person;
-import ru.job4j.chat.model.Role;
 import ru.job4j.chat.repository.PersonRepository;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -28,30 +22,46 @@ import java.util.stream.StreamSupport;
 @Slf4j
 public class UserService {
 
-    private RestTemplate rest;
-
     /**
      * DAO for objects of Person
      */
     private final PersonRepository personRepository;
 
     private BCryptPasswordEncoder encoder;
+
+    /**
+     * In-process lookup of roles
+     */
+    private final EntityResolver resolver;
+
     /**
-     * URI for getting object of Role by role ID
+     * Partial update of persons, a new password is encoded
      */
-    private static final String ROLE_API_ID = "http://localhost:8080/role/{id}";
+    final PatchMerger<Person> merger;
 
-    public UserService(RestTemplate rest, PersonRepository personRepository,
-                          BCryptPasswordEncoder encoder) {
-        this.rest = rest;
+    /**
+     * Versions of room histories for ETags, histories show usernames of authors
+     */
+    private final ResourceVersionService versions;
+
+    public UserService(PersonRepository personRepository,
+                          BCryptPasswordEncoder encoder,
+                          EntityResolver resolver,
+                          ResourceVersionService versions) {
         this.personRepository = personRepository;
         this.encoder = encoder;
+        this.resolver = resolver;
+        this.versions = versions;
+        this.merger = PatchMerger.of(Person.class, Map.of(
+                "password", value -> value == null ? null : encoder.encode((String) value)
+        ));
     }
 
     /**
      * Method for getting all Persons
      * @return List of persons
      */
+    @Transactional(readOnly = true)
     public List<Person> findAllPerson() {
         String anchor = UUID.randomUUID().toString();
         List<Person> personList = StreamSupport.stream(
@@ -68,6 +78,7 @@ public class UserService {
      * @param personId - person ID
      * @return object of Person
      */
+    @Transactional(readOnly = true)
     public Person findPersonById(int personId) {
         String anchor = UUID.randomUUID().toString();
         Optional<Person> person = personRepository.findById(personId);
@@ -82,6 +93,7 @@ public class UserService {
      * @param username - username of Person
      * @return object of Person
      */
+    @Transactional(readOnly = true)
     public Person findPersonByUsername(String username) {
         String anchor = UUID.randomUUID().toString();
         Optional<Person> person = personRepository.findByUsername(username);
@@ -95,21 +107,16 @@ public class UserService {
      * Method for signing up new person
      * @param roleId - role ID
      * @param person - object of Person
-     * @param jwtToken - JWT token (String)
      * @return object of Person
      */
-    public Person singUpPerson(int roleId, Person person, String jwtToken) {
+    public Person singUpPerson(int roleId, Person person) {
         if (person.getUsername() == null || person.getPassword() == null) {
             throw new NullPointerException("Username or Password field's is empty");
         }
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", jwtToken);
-        HttpEntity<?> entity = new HttpEntity<>(headers);
-        ResponseEntity<Role> role = rest.exchange(ROLE_API_ID, HttpMethod.GET, entity, Role.class, roleId);
         Person signedUpPerson = Person.of(
                 person.getUsername(),
                 encoder.encode(person.getPassword()),
-                role.getBody());
+                resolver.resolveRole(roleId));
         return personRepository.save(signedUpPerson);
     }
 
@@ -124,40 +131,14 @@ public class UserService {
             throw new IllegalArgumentException("Person not found. Actual parameters: person ID - " + person.getId() + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
         }
         var tempPerson = currentPerson.get();
-        var methods = tempPerson.getClass().getDeclaredMethods();
-        var namePerMethod = new HashMap<String, Method>();
-        for (var method : methods) {
-            var name = method.getName();
-            if (name.startsWith("get") || name.startsWith("set")) {
-                namePerMethod.put(name, method);
-            }
-        }
-        for (var name : namePerMethod.keySet()) {
-            if (name.startsWith("get")) {
-                var getMethod = namePerMethod.get(name);
-                var setMethod = namePerMethod.get(name.replace("get", "set"));
-                if (setMethod == null) {
-                    throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                }
-                Object newValue = null;
-                try {
-                    newValue = getMethod.invoke(person);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    e.printStackTrace();
-                }
-                if (name.equals("getPassword")) {
-                    newValue = encoder.encode((String) newValue);
-                }
-                if (newValue != null) {
-                    try {
-                        setMethod.invoke(tempPerson, newValue);
-                    } catch (IllegalAccessException | InvocationTargetException e) {
-                        throw new NullPointerException("An internal error has occurred. Please try again later or contact technical support with the 'anchor'. anchor: " + anchor);
-                    }
-                }
-            }
-        }
+        String username = tempPerson.getUsername();
+        merger.merge(person, tempPerson);
         personRepository.save(tempPerson);
+        resolver.evictPerson(username);
+        resolver.evictPerson(tempPerson.getUsername());
+        if (!Objects.equals(username, tempPerson.getUsername())) {
+            versions.bump(versions.roomsOfPerson(tempPerson.getId()));
+        }
     }
 
     /**
@@ -170,8 +151,11 @@ public class UserService {
         if (foundPerson.isEmpty()) {
             throw new IllegalArgumentException("Person not found. Actual parameters: person ID - " + personId + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
         }
+        List<String> rooms = versions.roomsOfPerson(personId);
         Person person = new Person();
         person.setId(personId);
         personRepository.delete(person);
+        resolver.evictPerson(foundPerson.get().getUsername());
+        versions.bump(rooms);
     }
 }
@@ -0,0 +1,77 @@
+package ru.job4j.chat.websocket;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.stereotype.Component;
+import ru.job4j.chat.JWTTokenVerifier;
+
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static ru.job4j.chat.JWTAuthenticationFilter.*;
+
+/**
+ * Authentication of STOMP sessions with the same JWT as JWTAuthorizationFilter.
+ * Only authenticated sessions may subscribe, and only to room topics.
+ * Messages are created through REST, so SEND frames are rejected.
+ */
+@Component
+@RequiredArgsConstructor
+public class JWTChannelInterceptor implements ChannelInterceptor {
+
+    private final JWTTokenVerifier tokenVerifier;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        String anchor = UUID.randomUUID().toString();
+        StompCommand command = accessor.getCommand();
+        if (StompCommand.CONNECT.equals(command)) {
+            accessor.setUser(getAuthentication(accessor.getFirstNativeHeader(HEADER_STRING), anchor));
+        } else if (StompCommand.SUBSCRIBE.equals(command)) {
+            if (accessor.getUser() == null) {
+                throw new MessagingException("Session is not authenticated. Please contact technical support with the 'anchor'. anchor: " + anchor);
+            }
+            String destination = accessor.getDestination();
+            if (destination == null || !destination.startsWith(WebSocketConfig.ROOM_TOPIC_PREFIX)) {
+                throw new MessagingException("Invalid destination. Actual parameters: destination - " + destination + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+            }
+        } else if (StompCommand.SEND.equals(command)) {
+            throw new MessagingException("Sending is not supported, use POST /message/room/{id}. Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        return message;
+    }
+
+    /**
+     * Private method for verifying JWT of the CONNECT frame
+     * @param header - value of Authorization header
+     * @param anchor - anchor for error message
+     * @return authentication of the session
+     */
+    private UsernamePasswordAuthenticationToken getAuthentication(String header, String anchor) {
+        if (header == null || !header.startsWith(TOKEN_PREFIX)) {
+            throw new MessagingException("Token is absent. Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        String user;
+        try {
+            user = tokenVerifier.verify(header.replace(TOKEN_PREFIX, ""));
+        } catch (JWTVerificationException e) {
+            throw new MessagingException("Token is invalid. Please contact technical support with the 'anchor'. anchor: " + anchor, e);
+        }
+        if (user == null) {
+            throw new MessagingException("Token has no subject. Please contact technical support with the 'anchor'. anchor: " + anchor);
+        }
+        return new UsernamePasswordAuthenticationToken(user, null, new ArrayList<>());
+    }
+}
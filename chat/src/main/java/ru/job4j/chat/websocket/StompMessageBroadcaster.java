@@ -0,0 +1,47 @@
+package ru.job4j.chat.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import ru.job4j.chat.event.MessageCreatedEvent;
+
+/**
+ * Fan-out of new messages to STOMP subscribers of the room
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class StompMessageBroadcaster {
+
+    private final SimpMessagingTemplate template;
+
+    private final ObjectMapper mapper;
+
+    /**
+     * Method for pushing new message to subscribers of /topic/room/{id}.
+     * The message is serialized once, the broker sends the same payload to every subscriber.
+     * @param event - event of created message
+     */
+    @EventListener
+    public void onMessageCreated(MessageCreatedEvent event) {
+        byte[] payload;
+        try {
+            payload = mapper.writeValueAsBytes(event.getMessage());
+        } catch (JsonProcessingException e) {
+            log.error("Message is not broadcast. Message ID: " + event.getMessage().getId(), e);
+            return;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        template.convertAndSend(
+                WebSocketConfig.ROOM_TOPIC_PREFIX + event.getRoomId(), payload, accessor.getMessageHeaders()
+        );
+    }
+}
@@ -0,0 +1,76 @@
+package ru.job4j.chat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.config.annotation.DelegatingWebMvcConfiguration;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class WireFormatConfigTest {
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class))
+            .withUserConfiguration(WireFormatConfig.class);
+
+    @Test
+    void whenAcceptSmileThenResponseIsWrittenByBootMapperWithBlackbird() {
+        runner.run(context -> {
+            MvcConfiguration mvc = new MvcConfiguration();
+            mvc.setConfigurers(List.of(context.getBean(WireFormatConfig.class)));
+            List<HttpMessageConverter<?>> converters = mvc.converters();
+            List<MappingJackson2SmileHttpMessageConverter> smile = converters.stream()
+                    .filter(MappingJackson2SmileHttpMessageConverter.class::isInstance)
+                    .map(MappingJackson2SmileHttpMessageConverter.class::cast)
+                    .collect(Collectors.toList());
+            assertThat(smile).hasSize(1);
+            assertThat(smile.get(0).getObjectMapper().getRegisteredModuleIds())
+                    .contains(new BlackbirdModule().getTypeId());
+
+            MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new TimeController())
+                    .setMessageConverters(converters.toArray(new HttpMessageConverter<?>[0]))
+                    .build();
+            byte[] body = mockMvc.perform(get("/time").accept("application/x-jackson-smile"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsByteArray();
+            JsonNode time = new SmileMapper().readTree(body).get("time");
+            assertThat(time.isTextual()).as("dates are written as text, as Spring Boot sets").isTrue();
+        });
+    }
+
+    /**
+     * Spring MVC configuration that exposes its message converters
+     */
+    private static final class MvcConfiguration extends DelegatingWebMvcConfiguration {
+
+        private List<HttpMessageConverter<?>> converters() {
+            return getMessageConverters();
+        }
+    }
+
+    @RestController
+    private static final class TimeController {
+
+        @GetMapping("/time")
+        public Map<String, Timestamp> time() {
+            return Map.of("time", new Timestamp(0));
+        }
+    }
+}
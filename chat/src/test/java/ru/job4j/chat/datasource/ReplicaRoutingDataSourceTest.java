@@ -0,0 +1,140 @@
+package ru.job4j.chat.datasource;
+
+import com.auth0.jwt.JWT;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.job4j.chat.JWTAuthenticationFilter.EXPIRATION_TIME;
+import static ru.job4j.chat.JWTAuthenticationFilter.HEADER_STRING;
+import static ru.job4j.chat.JWTAuthenticationFilter.SECRET;
+import static ru.job4j.chat.JWTAuthenticationFilter.TOKEN_PREFIX;
+
+/**
+ * Needs the second local database chat_replica, it plays the role of replica
+ */
+@SpringBootTest(properties = {
+        "chat.datasource.replicas=jdbc:postgresql://127.0.0.1:5432/chat_replica",
+        "chat.datasource.read-your-writes=60000"
+})
+@AutoConfigureMockMvc
+class ReplicaRoutingDataSourceTest {
+
+    private static final String DATABASE = "select current_database()";
+
+    @Autowired
+    private ReplicaRoutingDataSource routing;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void checkReplicas() {
+        routing.checkReplicas();
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void whenReadOnlyTransactionThenReplica() {
+        assertThat(routing.isHealthy("replica-1")).isTrue();
+        assertThat(database(true)).isEqualTo("chat_replica");
+        assertThat(database(false)).isEqualTo("chat");
+    }
+
+    @Test
+    void whenUserWroteThenReadsGoToPrimary() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("writer", null, Collections.emptyList()));
+        assertThat(database(false)).isEqualTo("chat");
+        assertThat(database(true)).isEqualTo("chat");
+    }
+
+    @Test
+    void whenCookieOfRecentWriteOnAnotherInstanceThenReadsGoToPrimary() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("reader", null, Collections.emptyList()));
+        assertThat(database(true)).isEqualTo("chat_replica");
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(
+                ReplicaRoutingDataSource.LAST_WRITE_COOKIE, String.valueOf(System.currentTimeMillis())
+        ));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        assertThat(database(true)).isEqualTo("chat");
+    }
+
+    @Test
+    void whenCookieOfWriteInFutureThenReadsGoToReplica() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("reader", null, Collections.emptyList()));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(ReplicaRoutingDataSource.LAST_WRITE_COOKIE, String.valueOf(Long.MAX_VALUE)));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        assertThat(database(true)).isEqualTo("chat_replica");
+    }
+
+    /**
+     * Room and author of a new message are looked up before the insert within one request,
+     * the insert must not run on a replica connection taken by a read-only lookup
+     */
+    @Test
+    void whenRequestReadsAndThenWritesThenWriteGoesToPrimary() throws Exception {
+        String text = "routing " + UUID.randomUUID();
+        int roomId = jdbcTemplate.queryForObject("select min(id) from rooms", Integer.class);
+        String token = JWT.create()
+                .withSubject("user")
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(HMAC512(SECRET.getBytes()));
+        try {
+            mockMvc.perform(post("/message/room/" + roomId)
+                            .header(HEADER_STRING, TOKEN_PREFIX + token)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"text\":\"" + text + "\"}"))
+                    .andExpect(status().isOk());
+            assertThat(jdbcTemplate.queryForObject(
+                    "select count(*) from messages where text = ?", Integer.class, text
+            )).isEqualTo(1);
+        } finally {
+            jdbcTemplate.update("delete from messages where text = ?", text);
+        }
+    }
+
+    private String database(boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> jdbcTemplate.queryForObject(DATABASE, String.class));
+    }
+}
@@ -0,0 +1,99 @@
+package ru.job4j.chat.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterTest {
+
+    private static final String USERNAME = "user";
+
+    private static final String PATH = "/message/room/1";
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(SECOND);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final RateLimiter limiter = limiter(3, 1);
+
+    @Test
+    void whenBurstWithinCapacityThenAllowedAndNextRejected() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.acquire(USERNAME, "POST", PATH)).isZero();
+        }
+        assertThat(limiter.acquire(USERNAME, "POST", PATH)).isEqualTo(SECOND);
+        assertThat(registry.counter(RateLimiter.REJECTED, "rule", "post-message").count()).isEqualTo(1);
+    }
+
+    @Test
+    void whenBucketsOfUsersThenIndependent() {
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(USERNAME, "POST", PATH);
+        }
+        assertThat(limiter.acquire("other", "POST", PATH)).isZero();
+        assertThat(limiter.acquire(USERNAME, "GET", PATH)).isZero();
+    }
+
+    @Test
+    void whenTimePassesThenTokensRefill() {
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(USERNAME, "POST", PATH);
+        }
+        now.addAndGet(SECOND / 2);
+        assertThat(limiter.acquire(USERNAME, "POST", PATH)).isEqualTo(SECOND / 2);
+        now.addAndGet(SECOND / 2);
+        assertThat(limiter.acquire(USERNAME, "POST", PATH)).isZero();
+        assertThat(limiter.acquire(USERNAME, "POST", PATH)).isEqualTo(SECOND);
+        now.addAndGet(10 * SECOND);
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.acquire(USERNAME, "POST", PATH)).isZero();
+        }
+        assertThat(limiter.acquire(USERNAME, "POST", PATH)).isPositive();
+    }
+
+    @Test
+    void whenRetryAfterThenWholeSecondsRoundedUp() {
+        assertThat(RateLimitFilter.retryAfterSeconds(1)).isEqualTo(1);
+        assertThat(RateLimitFilter.retryAfterSeconds(SECOND)).isEqualTo(1);
+        assertThat(RateLimitFilter.retryAfterSeconds(SECOND + 1)).isEqualTo(2);
+        assertThat(RateLimitFilter.retryAfterSeconds(5 * SECOND / 2)).isEqualTo(3);
+    }
+
+    @Test
+    void whenBucketIsFullAgainThenEvicted() {
+        limiter.acquire(USERNAME, "POST", PATH);
+        limiter.acquire("other", "POST", PATH);
+        limiter.acquire("other", "POST", PATH);
+        assertThat(limiter.buckets()).isEqualTo(2);
+
+        now.addAndGet(SECOND);
+        limiter.evictIdle();
+        assertThat(limiter.buckets()).isEqualTo(1);
+
+        now.addAndGet(SECOND);
+        limiter.evictIdle();
+        assertThat(limiter.buckets()).isZero();
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.acquire("other", "POST", PATH)).isZero();
+        }
+    }
+
+    private RateLimiter limiter(int capacity, double perSecond) {
+        RateLimitProperties.Rule rule = new RateLimitProperties.Rule();
+        rule.setName("post-message");
+        rule.setMethod("POST");
+        rule.setPath("/message/room/*");
+        rule.setCapacity(capacity);
+        rule.setPerSecond(perSecond);
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setRules(List.of(rule));
+        return new RateLimiter(properties, registry, username -> "user", now::get);
+    }
+}
@@ -0,0 +1,63 @@
+package ru.job4j.chat.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.job4j.chat.metrics.QueryCountInspector;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Room;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class MessageRepositoryTest {
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void whenReadPagesThenOneQueryPerPage() {
+        List<Room> rooms = new ArrayList<>();
+        roomRepository.findAll().forEach(rooms::add);
+        List<Person> persons = new ArrayList<>();
+        personRepository.findAll().forEach(persons::add);
+        Room room = rooms.get(0);
+        for (int i = 0; i < 10; i++) {
+            messageRepository.save(Message.of("text " + i, room, persons.get(i % persons.size())));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        QueryCountInspector.reset();
+        var page = messageRepository.findPage(PageRequest.of(0, 10));
+        assertThat(page).hasSize(10);
+        assertThat(QueryCountInspector.count()).isEqualTo(1);
+
+        QueryCountInspector.reset();
+        var roomPage = messageRepository.findRoomPage(room.getId(), PageRequest.of(0, 10));
+        assertThat(roomPage).isNotEmpty().allMatch(m -> m.getRoomId() == room.getId());
+        assertThat(QueryCountInspector.count()).isEqualTo(1);
+
+        QueryCountInspector.reset();
+        var byUser = messageRepository.findAllMessagesByUserId(persons.get(0).getId());
+        assertThat(byUser).isNotEmpty().allMatch(m -> m.getUsername() != null);
+        assertThat(QueryCountInspector.count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,79 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.MessageDto;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.RoomRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class IdempotentMessageServiceTest {
+
+    private static final String USERNAME = "user";
+
+    @Autowired
+    private IdempotentMessageService idempotentMessageService;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String text = "idempotent " + UUID.randomUUID();
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from messages where text = ?", text);
+        jdbcTemplate.update("delete from message_idempotency where idempotency_key = ?", text);
+    }
+
+    @Test
+    void whenConcurrentRequestsWithSameKeyThenOneMessage() throws Exception {
+        List<Room> rooms = new ArrayList<>();
+        roomRepository.findAll().forEach(rooms::add);
+        int roomId = rooms.get(0).getId();
+        int requests = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        List<Future<MessageDto>> results = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            Callable<MessageDto> request = () -> {
+                SecurityContextHolder.getContext().setAuthentication(
+                        new UsernamePasswordAuthenticationToken(USERNAME, null, List.of())
+                );
+                start.await();
+                return idempotentMessageService.addMessage(roomId, Message.of(text, null, null), text);
+            };
+            results.add(executor.submit(request));
+        }
+        start.countDown();
+        List<Integer> ids = new ArrayList<>();
+        for (Future<MessageDto> result : results) {
+            ids.add(result.get().getId());
+        }
+        executor.shutdown();
+
+        assertThat(ids).containsOnly(ids.get(0));
+        assertThat(jdbcTemplate.queryForObject(
+                "select count(*) from messages where text = ?", Integer.class, text
+        )).isEqualTo(1);
+    }
+}
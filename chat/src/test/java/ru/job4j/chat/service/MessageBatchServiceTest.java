@@ -0,0 +1,112 @@
+package ru.job4j.chat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import ru.job4j.chat.model.MessageBatchItem;
+import ru.job4j.chat.model.MessageBatchResult;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.ratelimit.RateLimitProperties;
+import ru.job4j.chat.ratelimit.RateLimiter;
+import ru.job4j.chat.repository.MessageRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageBatchServiceTest {
+
+    private static final String USERNAME = "user";
+
+    private static final int UNKNOWN_ROOM = 3;
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+
+    private final EntityResolver resolver = mock(EntityResolver.class);
+
+    private final RateLimitProperties properties = new RateLimitProperties();
+
+    @BeforeEach
+    void setUp() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(USERNAME, null, List.of())
+        );
+        when(resolver.resolvePerson(USERNAME)).thenReturn(Person.of(USERNAME, "password", Role.of("user")));
+        when(resolver.resolveRoom(anyInt())).thenAnswer(invocation -> {
+            int roomId = invocation.getArgument(0);
+            if (roomId == UNKNOWN_ROOM) {
+                String anchor = UUID.randomUUID().toString();
+                throw new IllegalArgumentException("Room not found. Actual parameters: room ID - " + roomId + ". Please contact technical support with the 'anchor'. anchor: " + anchor);
+            }
+            Room room = Room.of("room " + roomId);
+            room.setId(roomId);
+            return room;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void whenUnknownRoomThenOnlyItsItemFails() {
+        List<MessageBatchResult> results = service(100).createMessages(List.of(
+                item(1, "first"), item(UNKNOWN_ROOM, "lost"), item(2, "second")
+        ));
+
+        assertThat(results).hasSize(3);
+        assertThat(results.get(0).getMessage().getText()).isEqualTo("first");
+        assertThat(results.get(0).getMessage().getRoomId()).isEqualTo(1);
+        assertThat(results.get(1).getMessage()).isNull();
+        assertThat(results.get(1).getError().get("longMessage").asText()).startsWith("Room not found");
+        assertThat(results.get(2).getMessage().getText()).isEqualTo("second");
+        assertThat(results.get(2).getMessage().getRoomId()).isEqualTo(2);
+    }
+
+    @Test
+    void whenItemsOverLimitOfSinglePostsThenOnlyTheyFail() {
+        List<MessageBatchResult> results = service(2).createMessages(List.of(
+                item(1, "first"), item(UNKNOWN_ROOM, "lost"), item(2, "second"), item(1, "third")
+        ));
+
+        assertThat(results.get(0).getMessage()).isNotNull();
+        assertThat(results.get(1).getError().get("longMessage").asText()).startsWith("Room not found");
+        assertThat(results.get(2).getMessage()).isNotNull();
+        assertThat(results.get(3).getMessage()).isNull();
+        assertThat(results.get(3).getError().get("shortMessage").asText()).isEqualTo("Too many requests");
+    }
+
+    /**
+     * Method for building service with the limit of single posts of capacity messages
+     */
+    private MessageBatchService service(int capacity) {
+        RateLimitProperties.Rule rule = new RateLimitProperties.Rule();
+        rule.setName("post-message");
+        rule.setMethod("POST");
+        rule.setPath("/message/room/*");
+        rule.setCapacity(capacity);
+        rule.setPerSecond(0.001);
+        properties.setRules(List.of(rule));
+        RateLimiter limiter = new RateLimiter(properties, new SimpleMeterRegistry(), username -> "user");
+        return new MessageBatchService(messageRepository, resolver, mock(ApplicationEventPublisher.class),
+                mock(ResourceVersionService.class), limiter, 100);
+    }
+
+    private static MessageBatchItem item(int roomId, String text) {
+        MessageBatchItem item = new MessageBatchItem();
+        item.setRoomId(roomId);
+        item.setText(text);
+        return item;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.job4j.chat.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import ru.job4j.chat.model.Message;
+import ru.job4j.chat.model.Person;
+import ru.job4j.chat.model.Role;
+import ru.job4j.chat.model.Room;
+import ru.job4j.chat.repository.PersonRepository;
+
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class PatchMergerTest {
+
+    private static final Timestamp OLD = new Timestamp(0);
+
+    @Test
+    void whenPropertiesOfSourceAreNullThenTargetKeepsThem() {
+        Room room = Room.of("room");
+        Message source = new Message();
+        Message target = Message.of("text", room, null);
+        target.setCreated(OLD);
+
+        PatchMerger.of(Message.class).merge(source, target);
+
+        assertThat(target.getText()).isEqualTo("text");
+        assertThat(target.getRoom()).isSameAs(room);
+        assertThat(target.getCreated()).isEqualTo(OLD);
+    }
+
+    @Test
+    void whenPropertiesOfSourceAreSetThenCopied() {
+        Room target = Room.of("room");
+        PatchMerger.of(Room.class).merge(Room.of("renamed"), target);
+        assertThat(target.getName()).isEqualTo("renamed");
+    }
+
+    @Test
+    void whenMessageIsMergedThenCreatedIsStampedAnew() {
+        Message source = new Message();
+        source.setText("edited");
+        Message target = Message.of("text", Room.of("room"), null);
+        target.setCreated(OLD);
+        long before = System.currentTimeMillis();
+
+        MessageService.MERGER.merge(source, target);
+
+        assertThat(target.getText()).isEqualTo("edited");
+        assertThat(target.getCreated().getTime()).isGreaterThanOrEqualTo(before);
+    }
+
+    @Test
+    void whenPasswordIsSetThenEncodedAndWhenNullThenKept() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4);
+        PatchMerger<Person> merger = new UserService(
+                mock(PersonRepository.class), encoder, mock(EntityResolver.class), mock(ResourceVersionService.class)
+        ).merger;
+        Person target = Person.of("user", "old hash", Role.of("user"));
+
+        merger.merge(Person.of(null, "secret", null), target);
+        String encoded = target.getPassword();
+        assertThat(encoded).isNotEqualTo("secret");
+        assertThat(encoder.matches("secret", encoded)).isTrue();
+        assertThat(target.getUsername()).isEqualTo("user");
+
+        merger.merge(Person.of("renamed", null, null), target);
+        assertThat(target.getPassword()).isEqualTo(encoded);
+        assertThat(target.getUsername()).isEqualTo("renamed");
+    }
+}